@@ -0,0 +1,203 @@
+package com.amazonaws.samples.qdevmovies.movies;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Adaptive concurrency limit shared by the read endpoints. The limit follows AIMD: it grows
+ * by about one per round of requests that finish within their latency target while the
+ * limit is in use, and is cut by {@link #BACKOFF} when a request overruns its target.
+ * Each endpoint class may only fill its share of the limit, so as the limit shrinks under
+ * load full catalog scans are shed first and id lookups last.
+ */
+@Component
+public class AdmissionControl {
+    static final double BACKOFF = 0.9;
+
+    public enum EndpointClass {
+        /** Single movie by id: details page, reviews, similar movies, id search. */
+        LOOKUP(1.0, 50),
+        /** Filtered or full-text search. */
+        SEARCH(0.6, 250),
+        /** Unfiltered search or movie list render over the whole catalog. */
+        SCAN(0.25, 1000);
+
+        private final double share;
+        private final long targetMillis;
+
+        EndpointClass(double share, long targetMillis) {
+            this.share = share;
+            this.targetMillis = targetMillis;
+        }
+
+        public double getShare() { return share; }
+        public long getTargetMillis() { return targetMillis; }
+    }
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final LongSupplier nanoClock;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Map<EndpointClass, Counters> counters = new EnumMap<>(EndpointClass.class);
+    // Only written under the monitor; read without it on admission
+    private volatile double limit;
+    private long lastDecreaseNanos;
+
+    private static class Counters {
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicLong admitted = new AtomicLong();
+        final AtomicLong shed = new AtomicLong();
+    }
+
+    /**
+     * An admitted request. Must be released exactly once when the request completes.
+     */
+    public class Permit {
+        private final EndpointClass endpointClass;
+        private final long startNanos;
+        private final int inFlightAtStart;
+
+        private Permit(EndpointClass endpointClass, long startNanos, int inFlightAtStart) {
+            this.endpointClass = endpointClass;
+            this.startNanos = startNanos;
+            this.inFlightAtStart = inFlightAtStart;
+        }
+
+        public void release() {
+            inFlight.decrementAndGet();
+            counters.get(endpointClass).inFlight.decrementAndGet();
+            onSample(this, nanoClock.getAsLong() - startNanos);
+        }
+    }
+
+    public static class ClassStats {
+        private final int limit;
+        private final int inFlight;
+        private final long admitted;
+        private final long shed;
+        private final long targetMillis;
+
+        ClassStats(int limit, int inFlight, long admitted, long shed, long targetMillis) {
+            this.limit = limit;
+            this.inFlight = inFlight;
+            this.admitted = admitted;
+            this.shed = shed;
+            this.targetMillis = targetMillis;
+        }
+
+        public int getLimit() { return limit; }
+        public int getInFlight() { return inFlight; }
+        public long getAdmitted() { return admitted; }
+        public long getShed() { return shed; }
+        public long getTargetMillis() { return targetMillis; }
+    }
+
+    public static class Stats {
+        private final double limit;
+        private final int minLimit;
+        private final int maxLimit;
+        private final int inFlight;
+        private final Map<String, ClassStats> classes;
+
+        Stats(double limit, int minLimit, int maxLimit, int inFlight, Map<String, ClassStats> classes) {
+            this.limit = limit;
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+            this.inFlight = inFlight;
+            this.classes = classes;
+        }
+
+        public double getLimit() { return limit; }
+        public int getMinLimit() { return minLimit; }
+        public int getMaxLimit() { return maxLimit; }
+        public int getInFlight() { return inFlight; }
+        public Map<String, ClassStats> getClasses() { return classes; }
+    }
+
+    public AdmissionControl() {
+        this(64, 8, 200);
+    }
+
+    /**
+     * @param initialLimit Concurrency limit before any requests have been measured
+     * @param minLimit Floor the limit never backs off below
+     * @param maxLimit Ceiling the limit never grows above; no use exceeding the server's thread pool
+     */
+    @Autowired
+    public AdmissionControl(@Value("${admission.initial-limit:64}") int initialLimit,
+                            @Value("${admission.min-limit:8}") int minLimit,
+                            @Value("${admission.max-limit:200}") int maxLimit) {
+        this(initialLimit, minLimit, maxLimit, System::nanoTime);
+    }
+
+    AdmissionControl(int initialLimit, int minLimit, int maxLimit, LongSupplier nanoClock) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("admission limits must satisfy 1 <= min-limit <= max-limit");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.nanoClock = nanoClock;
+        this.lastDecreaseNanos = nanoClock.getAsLong();
+        for (EndpointClass endpointClass : EndpointClass.values()) {
+            counters.put(endpointClass, new Counters());
+        }
+    }
+
+    /**
+     * Admits a request if the total in-flight count is below this class's share of the limit.
+     *
+     * @return a permit to release when the request completes, or null if the request is shed
+     */
+    public Permit tryAcquire(EndpointClass endpointClass) {
+        Counters classCounters = counters.get(endpointClass);
+        int allowed = limitFor(endpointClass);
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= allowed) {
+                classCounters.shed.incrementAndGet();
+                return null;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        classCounters.inFlight.incrementAndGet();
+        classCounters.admitted.incrementAndGet();
+        return new Permit(endpointClass, nanoClock.getAsLong(), current + 1);
+    }
+
+    private synchronized void onSample(Permit permit, long latencyNanos) {
+        if (latencyNanos > TimeUnit.MILLISECONDS.toNanos(permit.endpointClass.targetMillis)) {
+            // Overruns by requests admitted before the last cut were caused by the old limit; back off once
+            if (permit.startNanos - lastDecreaseNanos >= 0) {
+                limit = Math.max(minLimit, limit * BACKOFF);
+                lastDecreaseNanos = nanoClock.getAsLong();
+            }
+        } else if (permit.inFlightAtStart * 2 >= limit) {
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+    }
+
+    int limitFor(EndpointClass endpointClass) {
+        return Math.max(1, (int) (limit * endpointClass.share));
+    }
+
+    public Stats getStats() {
+        Map<String, ClassStats> classes = new LinkedHashMap<>();
+        for (Map.Entry<EndpointClass, Counters> entry : counters.entrySet()) {
+            Counters classCounters = entry.getValue();
+            classes.put(entry.getKey().name().toLowerCase(), new ClassStats(limitFor(entry.getKey()),
+                classCounters.inFlight.get(), classCounters.admitted.get(), classCounters.shed.get(),
+                entry.getKey().targetMillis));
+        }
+        return new Stats(limit, minLimit, maxLimit, inFlight.get(), classes);
+    }
+}
@@ -0,0 +1,109 @@
+package com.amazonaws.samples.qdevmovies.movies;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Classifies movie read requests by cost and admits them through {@link AdmissionControl}
+ * before they reach {@link MoviesController}. Shed requests are answered immediately with
+ * 503 and Retry-After instead of queueing for a server thread.
+ */
+@Component
+public class AdmissionFilter extends OncePerRequestFilter {
+    private static final Logger logger = LogManager.getLogger(AdmissionFilter.class);
+    static final int RETRY_AFTER_SECONDS = 1;
+    private static final Pattern SINGLE_MOVIE_PATH = Pattern.compile("/movies/[^/]+/(details|reviews|similar)");
+
+    private final AdmissionControl admissionControl;
+    private final WarmUp warmUp;
+
+    @Autowired
+    public AdmissionFilter(AdmissionControl admissionControl, WarmUp warmUp) {
+        this.admissionControl = admissionControl;
+        this.warmUp = warmUp;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        AdmissionControl.EndpointClass endpointClass = classify(request.getMethod(),
+            request.getRequestURI().substring(request.getContextPath().length()), request::getParameter);
+        // Warm-up traffic is let through uncounted, so its cold latencies do not shrink the limit.
+        // Only the warm-up itself: shedding stays on at any other time, including during shutdown.
+        if (endpointClass == null || warmUp.isRunning()) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        AdmissionControl.Permit permit = admissionControl.tryAcquire(endpointClass);
+        if (permit == null) {
+            logger.warn("Arrr! Shedding {} request to {}, the ship be full", endpointClass, request.getRequestURI());
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            response.setHeader("Retry-After", String.valueOf(RETRY_AFTER_SECONDS));
+            response.setContentType("application/json");
+            response.setCharacterEncoding("UTF-8");
+            response.getWriter().write("{\"status\":503,\"error\":\"Service Unavailable\","
+                + "\"message\":\"Arrr! Too many hands on deck, matey. Try again shortly.\"}");
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            // Streamed review pages finish writing after this returns; their cost is in the lookup itself
+            permit.release();
+            warmUp.recordRequest(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @param path Request path without the context path
+     * @param parameters Request parameter lookup
+     * @return the cost class of a movie read request, or null for requests not admission controlled
+     */
+    static AdmissionControl.EndpointClass classify(String method, String path, Function<String, String> parameters) {
+        if (!"GET".equals(method)) {
+            return null;
+        }
+        if (SINGLE_MOVIE_PATH.matcher(path).matches()) {
+            return AdmissionControl.EndpointClass.LOOKUP;
+        }
+        if (!"/movies".equals(path) && !"/movies/search".equals(path)) {
+            return null;
+        }
+        if (hasText(parameters.apply("q"))) {
+            return AdmissionControl.EndpointClass.SEARCH;
+        }
+        // An id takes precedence over the other criteria in the search itself
+        if (isPositiveId(parameters.apply("id"))) {
+            return AdmissionControl.EndpointClass.LOOKUP;
+        }
+        if (hasText(parameters.apply("name")) || hasText(parameters.apply("genre")) || hasText(parameters.apply("director"))) {
+            return AdmissionControl.EndpointClass.SEARCH;
+        }
+        return AdmissionControl.EndpointClass.SCAN;
+    }
+
+    private static boolean hasText(String value) {
+        return value != null && !value.trim().isEmpty();
+    }
+
+    private static boolean isPositiveId(String value) {
+        try {
+            return value != null && Long.parseLong(value.trim()) > 0;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+}
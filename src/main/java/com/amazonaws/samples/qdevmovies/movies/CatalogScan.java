@@ -0,0 +1,172 @@
+package com.amazonaws.samples.qdevmovies.movies;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
+import java.util.function.Predicate;
+
+/**
+ * Filters the candidate rows of a catalog scan, splitting large scans into contiguous
+ * chunks that run on a dedicated fork/join pool. The cost per row is measured on every
+ * scan, and a scan only goes parallel when each chunk would carry at least
+ * {@link #TARGET_CHUNK_NANOS} of work, so small scans never pay for the hand-off.
+ * Chunk results are concatenated in chunk order, so matches keep their catalog order.
+ */
+public class CatalogScan {
+    static final long TARGET_CHUNK_NANOS = 100_000;
+    static final int CHUNKS_PER_THREAD = 4;
+    static final int MIN_BATCH_CHUNK = 256;
+    private static final double INITIAL_NANOS_PER_ROW = 200;
+    private static final double SMOOTHING = 0.2;
+
+    private final int parallelism;
+    private final ForkJoinPool pool;
+    // Smoothed cost of testing one row; races between scans only lose a sample
+    private volatile double nanosPerRow = INITIAL_NANOS_PER_ROW;
+
+    /**
+     * @param parallelism Worker threads for parallel scans; 1 or less to always scan sequentially
+     */
+    public CatalogScan(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+        this.pool = this.parallelism > 1
+            ? new ForkJoinPool(this.parallelism, CatalogScan::newWorker, null, false)
+            : null;
+    }
+
+    private static ForkJoinWorkerThread newWorker(ForkJoinPool pool) {
+        ForkJoinWorkerThread worker = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        worker.setName("catalog-scan-" + worker.getPoolIndex());
+        worker.setDaemon(true);
+        return worker;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Fewest candidate rows a chunk must hold to be worth running on its own thread.
+     */
+    int minChunkRows() {
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, TARGET_CHUNK_NANOS / nanosPerRow));
+    }
+
+    /**
+     * Appends the candidates that match {@code predicate} to {@code matches}, in catalog order.
+     *
+     * @param rows The catalog
+     * @param candidates Positions in {@code rows} to test
+     * @return the number of chunks the scan was split into, 1 if it ran sequentially
+     */
+    public <T> int filter(List<T> rows, BitSet candidates, Predicate<? super T> predicate, List<T> matches) {
+        int count = candidates.cardinality();
+        int minChunk = minChunkRows();
+        if (pool == null || count < 2 * minChunk) {
+            long start = System.nanoTime();
+            int tested = filterRange(rows, candidates, 0, rows.size(), predicate, matches);
+            record(tested, System.nanoTime() - start);
+            return 1;
+        }
+
+        // Split by position; candidates are assumed spread evenly enough over the catalog
+        int chunks = Math.max(2, Math.min(parallelism * CHUNKS_PER_THREAD, count / minChunk));
+        int span = (rows.size() + chunks - 1) / chunks;
+        List<Callable<List<T>>> tasks = new ArrayList<>(chunks);
+        for (int from = 0; from < rows.size(); from += span) {
+            int start = from;
+            int end = Math.min(rows.size(), from + span);
+            tasks.add(() -> {
+                List<T> chunkMatches = new ArrayList<>();
+                long began = System.nanoTime();
+                int tested = filterRange(rows, candidates, start, end, predicate, chunkMatches);
+                record(tested, System.nanoTime() - began);
+                return chunkMatches;
+            });
+        }
+
+        try {
+            for (Future<List<T>> chunk : pool.invokeAll(tasks)) {
+                matches.addAll(chunk.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted during parallel catalog scan", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException
+                ? (RuntimeException) e.getCause()
+                : new IllegalStateException("Parallel catalog scan failed", e.getCause());
+        }
+        return tasks.size();
+    }
+
+    /**
+     * Runs {@code action} once for every index below {@code size}, splitting the indexes
+     * into contiguous chunks on the scan pool when there are enough to share. Actions for
+     * different indexes must not depend on each other.
+     */
+    public void forEachIndex(int size, IntConsumer action) {
+        if (pool == null || size < 2 * MIN_BATCH_CHUNK) {
+            for (int i = 0; i < size; i++) {
+                action.accept(i);
+            }
+            return;
+        }
+        int chunks = Math.min(parallelism * CHUNKS_PER_THREAD, size / MIN_BATCH_CHUNK);
+        int span = (size + chunks - 1) / chunks;
+        List<Callable<Void>> tasks = new ArrayList<>(chunks);
+        for (int from = 0; from < size; from += span) {
+            int start = from;
+            int end = Math.min(size, from + span);
+            tasks.add(() -> {
+                for (int i = start; i < end; i++) {
+                    action.accept(i);
+                }
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> chunk : pool.invokeAll(tasks)) {
+                chunk.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted during parallel catalog pass", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException
+                ? (RuntimeException) e.getCause()
+                : new IllegalStateException("Parallel catalog pass failed", e.getCause());
+        }
+    }
+
+    private static <T> int filterRange(List<T> rows, BitSet candidates, int from, int to,
+                                       Predicate<? super T> predicate, List<T> matches) {
+        int tested = 0;
+        for (int i = candidates.nextSetBit(from); i >= 0 && i < to; i = candidates.nextSetBit(i + 1)) {
+            T row = rows.get(i);
+            if (predicate.test(row)) {
+                matches.add(row);
+            }
+            tested++;
+        }
+        return tested;
+    }
+
+    private void record(int rowCount, long elapsedNanos) {
+        if (rowCount > 0) {
+            nanosPerRow = Math.max(1.0, (1 - SMOOTHING) * nanosPerRow + SMOOTHING * elapsedNanos / rowCount);
+        }
+    }
+
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.amazonaws.samples.qdevmovies.movies;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Catalog and review statistics kept up to date as movies and reviews change. Movies are
+ * summarized into one {@link CatalogSummary} per distinct genre and year, built in one pass
+ * when the catalog is first reported and then adjusted movie by movie. A query filtered by
+ * genre or year merges only the matching partitions instead of visiting movies.
+ */
+@Service
+public class CatalogStatistics implements MovieService.CatalogListener, ReviewService.ReviewListener {
+    static final int TOP_DIRECTORS = 10;
+
+    // Genre as written in the catalog, then year
+    private final Map<String, TreeMap<Integer, CatalogSummary>> partitions = new HashMap<>();
+    private final CatalogSummary total = new CatalogSummary();
+    private final Map<Long, CatalogSummary> partitionOf = new HashMap<>();
+    // Review count and rating sum per movie, kept so a movie's reviews move with it between partitions
+    private final Map<Long, double[]> movieReviews = new HashMap<>();
+
+    public static class Stats {
+        private final String genre;
+        private final Integer fromYear;
+        private final Integer toYear;
+        private final CatalogSummary summary;
+
+        Stats(String genre, Integer fromYear, Integer toYear, CatalogSummary summary) {
+            this.genre = genre;
+            this.fromYear = fromYear;
+            this.toYear = toYear;
+            this.summary = summary;
+        }
+
+        public String getGenre() { return genre; }
+        public Integer getFromYear() { return fromYear; }
+        public Integer getToYear() { return toYear; }
+        public long getMovieCount() { return summary.getMovieCount(); }
+        public double getAverageDuration() { return summary.getAverageDuration(); }
+        public double getAverageRating() { return summary.getAverageRating(); }
+        public Map<String, Long> getRatingHistogram() { return summary.getRatingHistogram(); }
+        public Map<String, Long> getGenres() { return summary.getGenres(); }
+        public Map<String, Long> getDecades() { return summary.getDecades(); }
+        public List<CatalogSummary.DirectorCount> getTopDirectors() { return summary.topDirectors(TOP_DIRECTORS); }
+        public long getReviewCount() { return summary.getReviewCount(); }
+        public double getAverageReviewRating() { return summary.getAverageReviewRating(); }
+    }
+
+    @Autowired
+    public CatalogStatistics(MovieService movieService, ReviewService reviewService) {
+        reviewService.addReviewListener(this);
+        movieService.addCatalogListener(this);
+    }
+
+    @Override
+    public synchronized void catalogChanged(Collection<Movie> removed, Collection<Movie> added) {
+        for (Movie movie : removed) {
+            CatalogSummary partition = partitionOf.remove(movie.getId());
+            if (partition == null) {
+                continue;
+            }
+            double[] reviews = movieReviews.getOrDefault(movie.getId(), new double[2]);
+            for (CatalogSummary summary : new CatalogSummary[] {partition, total}) {
+                summary.removeMovie(movie);
+                summary.addReviews(-(long) reviews[0], -reviews[1]);
+            }
+            if (partition.isEmpty()) {
+                TreeMap<Integer, CatalogSummary> years = partitions.get(movie.getGenre());
+                years.remove(movie.getYear());
+                if (years.isEmpty()) {
+                    partitions.remove(movie.getGenre());
+                }
+            }
+        }
+        for (Movie movie : added) {
+            CatalogSummary partition = partitions
+                .computeIfAbsent(movie.getGenre(), genre -> new TreeMap<>())
+                .computeIfAbsent(movie.getYear(), year -> new CatalogSummary());
+            partitionOf.put(movie.getId(), partition);
+            double[] reviews = movieReviews.getOrDefault(movie.getId(), new double[2]);
+            for (CatalogSummary summary : new CatalogSummary[] {partition, total}) {
+                summary.addMovie(movie);
+                summary.addReviews((long) reviews[0], reviews[1]);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void reviewsAdded(long movieId, int reviewCount, double ratingSum) {
+        double[] reviews = movieReviews.computeIfAbsent(movieId, id -> new double[2]);
+        reviews[0] += reviewCount;
+        reviews[1] += ratingSum;
+        CatalogSummary partition = partitionOf.get(movieId);
+        if (partition != null) {
+            partition.addReviews(reviewCount, ratingSum);
+            total.addReviews(reviewCount, ratingSum);
+        }
+    }
+
+    /**
+     * @param genre Genre to filter by (partial match, case-insensitive), null for all
+     * @param fromYear First release year to include, null for no lower bound
+     * @param toYear Last release year to include, null for no upper bound
+     * @return statistics over the matching movies
+     * @throws IllegalArgumentException if {@code fromYear} is after {@code toYear}
+     */
+    public synchronized Stats getStatistics(String genre, Integer fromYear, Integer toYear) {
+        if (fromYear != null && toYear != null && fromYear > toYear) {
+            throw new IllegalArgumentException("fromYear must not be after toYear");
+        }
+        String needle = genre == null || genre.trim().isEmpty() ? null : MovieSearchIndex.normalize(genre);
+        CatalogSummary merged = new CatalogSummary();
+        if (needle == null && fromYear == null && toYear == null) {
+            total.mergeInto(merged);
+            return new Stats(null, null, null, merged);
+        }
+        for (Map.Entry<String, TreeMap<Integer, CatalogSummary>> entry : partitions.entrySet()) {
+            if (needle != null && !MovieSearchIndex.normalize(entry.getKey()).contains(needle)) {
+                continue;
+            }
+            NavigableMap<Integer, CatalogSummary> years = entry.getValue();
+            if (fromYear != null) {
+                years = years.tailMap(fromYear, true);
+            }
+            if (toYear != null) {
+                years = years.headMap(toYear, true);
+            }
+            for (CatalogSummary summary : years.values()) {
+                summary.mergeInto(merged);
+            }
+        }
+        return new Stats(needle == null ? null : genre.trim(), fromYear, toYear, merged);
+    }
+}
@@ -0,0 +1,161 @@
+package com.amazonaws.samples.qdevmovies.movies;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aggregates over a set of movies and their reviews: counts, sums and a fixed-bucket rating
+ * histogram. Every field is a plain sum, so a movie can be removed again by subtracting what
+ * it added, and summaries over disjoint sets of movies combine with {@link #mergeInto}.
+ * Not thread-safe; callers synchronize.
+ */
+public class CatalogSummary {
+    static final double RATING_BUCKET_WIDTH = 0.5;
+    static final int RATING_BUCKETS = 10;
+
+    private long movies;
+    private long durationSum;
+    private double ratingSum;
+    private final long[] ratingHistogram = new long[RATING_BUCKETS];
+    private final Map<String, Long> genreCounts = new HashMap<>();
+    private final Map<Integer, Long> decadeCounts = new HashMap<>();
+    private final Map<String, Long> directorCounts = new HashMap<>();
+    private long reviews;
+    private double reviewRatingSum;
+
+    public static class DirectorCount {
+        private final String director;
+        private final long movies;
+
+        DirectorCount(String director, long movies) {
+            this.director = director;
+            this.movies = movies;
+        }
+
+        public String getDirector() { return director; }
+        public long getMovies() { return movies; }
+    }
+
+    public void addMovie(Movie movie) {
+        apply(movie, 1);
+    }
+
+    public void removeMovie(Movie movie) {
+        apply(movie, -1);
+    }
+
+    public void addReviews(long count, double ratingSum) {
+        reviews += count;
+        reviewRatingSum += ratingSum;
+    }
+
+    private void apply(Movie movie, int sign) {
+        movies += sign;
+        durationSum += sign * movie.getDuration();
+        ratingSum += sign * movie.getImdbRating();
+        ratingHistogram[ratingBucket(movie.getImdbRating())] += sign;
+        for (String genre : genreTokens(movie.getGenre())) {
+            adjust(genreCounts, genre, sign);
+        }
+        adjust(decadeCounts, movie.getYear() - Math.floorMod(movie.getYear(), 10), sign);
+        if (movie.getDirector() != null && !movie.getDirector().trim().isEmpty()) {
+            adjust(directorCounts, movie.getDirector().trim(), sign);
+        }
+    }
+
+    boolean isEmpty() {
+        return movies == 0 && reviews == 0;
+    }
+
+    /**
+     * Adds this summary's aggregates to {@code target}.
+     */
+    public void mergeInto(CatalogSummary target) {
+        target.movies += movies;
+        target.durationSum += durationSum;
+        target.ratingSum += ratingSum;
+        for (int i = 0; i < RATING_BUCKETS; i++) {
+            target.ratingHistogram[i] += ratingHistogram[i];
+        }
+        genreCounts.forEach((genre, count) -> adjust(target.genreCounts, genre, count));
+        decadeCounts.forEach((decade, count) -> adjust(target.decadeCounts, decade, count));
+        directorCounts.forEach((director, count) -> adjust(target.directorCounts, director, count));
+        target.reviews += reviews;
+        target.reviewRatingSum += reviewRatingSum;
+    }
+
+    public long getMovieCount() { return movies; }
+    public double getAverageDuration() { return movies == 0 ? 0.0 : (double) durationSum / movies; }
+    public double getAverageRating() { return movies == 0 ? 0.0 : ratingSum / movies; }
+    public long getReviewCount() { return reviews; }
+    public double getAverageReviewRating() { return reviews == 0 ? 0.0 : reviewRatingSum / reviews; }
+
+    /**
+     * @return movie counts per rating bucket, keyed by the bucket's range; the last bucket includes 5.0
+     */
+    public Map<String, Long> getRatingHistogram() {
+        Map<String, Long> histogram = new LinkedHashMap<>();
+        for (int i = 0; i < RATING_BUCKETS; i++) {
+            histogram.put(i * RATING_BUCKET_WIDTH + "-" + (i + 1) * RATING_BUCKET_WIDTH, ratingHistogram[i]);
+        }
+        return histogram;
+    }
+
+    /**
+     * @return movie counts per genre, most common first; a movie counts once for each of its genres
+     */
+    public Map<String, Long> getGenres() {
+        Map<String, Long> genres = new LinkedHashMap<>();
+        genreCounts.entrySet().stream()
+            .sorted(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+            .forEach(entry -> genres.put(entry.getKey(), entry.getValue()));
+        return genres;
+    }
+
+    /**
+     * @return movie counts per decade, keyed like "1990s", oldest first
+     */
+    public Map<String, Long> getDecades() {
+        Map<String, Long> decades = new LinkedHashMap<>();
+        new TreeMap<>(decadeCounts).forEach((decade, count) -> decades.put(decade + "s", count));
+        return decades;
+    }
+
+    public List<DirectorCount> topDirectors(int limit) {
+        List<DirectorCount> top = new ArrayList<>();
+        directorCounts.entrySet().stream()
+            .sorted(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+            .limit(limit)
+            .forEach(entry -> top.add(new DirectorCount(entry.getKey(), entry.getValue())));
+        return top;
+    }
+
+    static int ratingBucket(double rating) {
+        return (int) Math.max(0, Math.min(RATING_BUCKETS - 1, Math.floor(rating / RATING_BUCKET_WIDTH)));
+    }
+
+    static List<String> genreTokens(String genre) {
+        List<String> tokens = new ArrayList<>();
+        if (genre != null) {
+            for (String token : genre.split("/")) {
+                if (!token.trim().isEmpty()) {
+                    tokens.add(token.trim());
+                }
+            }
+        }
+        return tokens;
+    }
+
+    private static <K> void adjust(Map<K, Long> counts, K key, long delta) {
+        long updated = counts.getOrDefault(key, 0L) + delta;
+        if (updated == 0) {
+            counts.remove(key);
+        } else {
+            counts.put(key, updated);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.amazonaws.samples.qdevmovies.movies;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * All reviews of one movie, in the order they were written, plus one precomputed ordering
+ * per {@link ReviewSort}. A page is a binary search for the cursor followed by a slice, so
+ * its cost does not grow with the number of reviews.
+ */
+public class MovieReviews {
+    private final long movieId;
+    private final List<Review> reviews;
+    private final Map<ReviewSort, int[]> orderings = new EnumMap<>(ReviewSort.class);
+
+    public MovieReviews(long movieId, List<Review> reviews) {
+        this.movieId = movieId;
+        this.reviews = Collections.unmodifiableList(new ArrayList<>(reviews));
+        for (ReviewSort sort : ReviewSort.values()) {
+            orderings.put(sort, order(sort));
+        }
+    }
+
+    private MovieReviews(long movieId, List<Review> reviews, Map<ReviewSort, int[]> orderings) {
+        this.movieId = movieId;
+        this.reviews = reviews;
+        this.orderings.putAll(orderings);
+    }
+
+    /**
+     * Returns a copy with one more review, written after all existing ones. The new review
+     * is inserted into each ordering by binary search instead of re-sorting.
+     */
+    public MovieReviews withReview(Review review) {
+        List<Review> extended = new ArrayList<>(reviews.size() + 1);
+        extended.addAll(reviews);
+        extended.add(review);
+        int sequence = reviews.size();
+        Map<ReviewSort, int[]> extendedOrderings = new EnumMap<>(ReviewSort.class);
+        for (Map.Entry<ReviewSort, int[]> entry : orderings.entrySet()) {
+            int[] ordering = entry.getValue();
+            int insertAt = firstAfter(entry.getKey(), ordering, review.getRating(), sequence);
+            int[] extendedOrdering = new int[ordering.length + 1];
+            System.arraycopy(ordering, 0, extendedOrdering, 0, insertAt);
+            extendedOrdering[insertAt] = sequence;
+            System.arraycopy(ordering, insertAt, extendedOrdering, insertAt + 1, ordering.length - insertAt);
+            extendedOrderings.put(entry.getKey(), extendedOrdering);
+        }
+        return new MovieReviews(movieId, Collections.unmodifiableList(extended), extendedOrderings);
+    }
+
+    public List<Review> getReviews() {
+        return reviews;
+    }
+
+    public int size() {
+        return reviews.size();
+    }
+
+    /**
+     * @param cursor Cursor from the previous page, or null for the first page
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public ReviewPage page(ReviewSort sort, String cursor, int limit) {
+        int[] ordering = orderings.get(sort);
+        int start = 0;
+        if (cursor != null && !cursor.isEmpty()) {
+            double[] key = decodeCursor(cursor);
+            start = firstAfter(sort, ordering, key[0], (int) key[1]);
+        }
+        int end = Math.min(ordering.length, start + Math.max(limit, 0));
+        List<Review> page = new ArrayList<>(end - start);
+        for (int i = start; i < end; i++) {
+            page.add(reviews.get(ordering[i]));
+        }
+        String nextCursor = null;
+        if (end < ordering.length && end > start) {
+            int last = ordering[end - 1];
+            nextCursor = encodeCursor(reviews.get(last).getRating(), last);
+        }
+        return new ReviewPage(movieId, sort, reviews.size(), page, nextCursor);
+    }
+
+    private int[] order(ReviewSort sort) {
+        List<Integer> sequences = new ArrayList<>(reviews.size());
+        for (int i = 0; i < reviews.size(); i++) {
+            sequences.add(i);
+        }
+        sequences.sort((a, b) -> sort.compare(reviews.get(a).getRating(), a, reviews.get(b).getRating(), b));
+        int[] ordering = new int[sequences.size()];
+        for (int i = 0; i < ordering.length; i++) {
+            ordering[i] = sequences.get(i);
+        }
+        return ordering;
+    }
+
+    private int firstAfter(ReviewSort sort, int[] ordering, double rating, int sequence) {
+        int low = 0;
+        int high = ordering.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int candidate = ordering[mid];
+            if (sort.compare(reviews.get(candidate).getRating(), candidate, rating, sequence) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    static String encodeCursor(double rating, int sequence) {
+        String key = rating + ":" + sequence;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static double[] decodeCursor(String cursor) {
+        try {
+            String key = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = key.indexOf(':');
+            return new double[] {Double.parseDouble(key.substring(0, separator)), Integer.parseInt(key.substring(separator + 1))};
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid reviews cursor: " + cursor, e);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.amazonaws.samples.qdevmovies.movies;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Secondary indexes over the movie catalog, used by {@link MovieService} to plan searches.
+ * Movies are addressed by their position in the catalog list, so every index is a set of
+ * {@link BitSet}s that can be intersected cheaply and iterated back in catalog order.
+ * <p>
+ * The bitmaps are kept encoded in one buffer, the same bytes a {@link MovieSnapshot}
+ * stores, so an index opened from a snapshot reads them from the mapped file and only the
+ * keys are decoded onto the heap. Layout, all big-endian:
+ * <pre>
+ * size        catalog size                                          (int)
+ * dictionary  genres, directors, title trigrams, each a count, then
+ *             length-prefixed UTF-8 keys with their bitmap offset
+ * bitmaps     n &gt; 0 then n sorted positions (ints), or
+ *             -n then n words as in {@link BitSet#toLongArray} (longs)
+ * </pre>
+ * Each bitmap takes whichever form is smaller, so the many sparse trigram postings of a
+ * large catalog do not each cost a word per 64 movies.
+ */
+public class MovieSearchIndex {
+    static final int GRAM_SIZE = 3;
+
+    private final ByteBuffer encoded;
+    private final int size;
+    // Key to bitmap offset in encoded
+    private final Map<String, Integer> genreBitmaps = new HashMap<>();
+    private final Map<String, Integer> directorBitmaps = new HashMap<>();
+    private final Map<String, Integer> titleGrams = new HashMap<>();
+
+    public MovieSearchIndex(List<Movie> movies) {
+        this(ByteBuffer.wrap(encode(movies)));
+    }
+
+    /**
+     * Reads an index from its encoded form, as written by {@link #encode}.
+     */
+    MovieSearchIndex(ByteBuffer encoded) {
+        this.encoded = encoded;
+        this.size = encoded.getInt(0);
+        int position = 4;
+        for (Map<String, Integer> dictionary : dictionaries()) {
+            int count = encoded.getInt(position);
+            position += 4;
+            for (int i = 0; i < count; i++) {
+                byte[] key = new byte[encoded.getInt(position)];
+                ByteBuffer view = encoded.duplicate();
+                view.position(position + 4);
+                view.get(key);
+                position += 4 + key.length;
+                dictionary.put(new String(key, StandardCharsets.UTF_8), encoded.getInt(position));
+                position += 4;
+            }
+        }
+    }
+
+    /**
+     * Builds the bitmaps of a catalog and encodes them in the layout described above.
+     */
+    static byte[] encode(List<Movie> movies) {
+        Map<String, BitSet> genres = new HashMap<>();
+        Map<String, BitSet> directors = new HashMap<>();
+        Map<String, BitSet> grams = new HashMap<>();
+        for (int i = 0; i < movies.size(); i++) {
+            Movie movie = movies.get(i);
+            bitmapFor(genres, normalize(movie.getGenre())).set(i);
+            bitmapFor(directors, normalize(movie.getDirector())).set(i);
+            String title = normalize(movie.getMovieName());
+            for (int start = 0; start + GRAM_SIZE <= title.length(); start++) {
+                bitmapFor(grams, title.substring(start, start + GRAM_SIZE)).set(i);
+            }
+        }
+
+        List<Map<String, BitSet>> dictionaries = new ArrayList<>();
+        dictionaries.add(genres);
+        dictionaries.add(directors);
+        dictionaries.add(grams);
+        int bitmapsOffset = 4;
+        for (Map<String, BitSet> dictionary : dictionaries) {
+            bitmapsOffset += 4;
+            for (String key : dictionary.keySet()) {
+                bitmapsOffset += 8 + key.getBytes(StandardCharsets.UTF_8).length;
+            }
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(movies.size());
+            List<BitSet> bitmaps = new ArrayList<>();
+            int offset = bitmapsOffset;
+            for (Map<String, BitSet> dictionary : dictionaries) {
+                out.writeInt(dictionary.size());
+                for (Map.Entry<String, BitSet> entry : dictionary.entrySet()) {
+                    byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(key.length);
+                    out.write(key);
+                    out.writeInt(offset);
+                    bitmaps.add(entry.getValue());
+                    offset += encodedSize(entry.getValue());
+                }
+            }
+            for (BitSet bitmap : bitmaps) {
+                if (storedAsPositions(bitmap)) {
+                    out.writeInt(bitmap.cardinality());
+                    for (int i = bitmap.nextSetBit(0); i >= 0; i = bitmap.nextSetBit(i + 1)) {
+                        out.writeInt(i);
+                    }
+                } else {
+                    long[] words = bitmap.toLongArray();
+                    out.writeInt(-words.length);
+                    for (long word : words) {
+                        out.writeLong(word);
+                    }
+                }
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Movies whose genre contains the (normalized) needle. The genre dictionary is tiny
+     * compared to the catalog, so the substring test runs once per distinct genre.
+     */
+    public BitSet matchGenre(String needle) {
+        return unionOfKeysContaining(genreBitmaps, needle);
+    }
+
+    /**
+     * Movies whose director contains the (normalized) needle.
+     */
+    public BitSet matchDirector(String needle) {
+        return unionOfKeysContaining(directorBitmaps, needle);
+    }
+
+    /**
+     * Candidate movies whose title contains every trigram of the needle. The result is a
+     * superset of the real matches and must be verified; returns null when the needle is
+     * too short to use the index.
+     */
+    public BitSet titleCandidates(String needle) {
+        if (needle.length() < GRAM_SIZE) {
+            return null;
+        }
+        BitSet candidates = null;
+        for (int start = 0; start + GRAM_SIZE <= needle.length(); start++) {
+            Integer posting = titleGrams.get(needle.substring(start, start + GRAM_SIZE));
+            if (posting == null) {
+                return new BitSet(size);
+            }
+            if (candidates == null) {
+                candidates = new BitSet(size);
+                orInto(candidates, posting);
+            } else {
+                BitSet next = new BitSet(size);
+                orInto(next, posting);
+                candidates.and(next);
+            }
+            if (candidates.isEmpty()) {
+                break;
+            }
+        }
+        return candidates;
+    }
+
+    static String normalize(String value) {
+        return value == null ? "" : value.trim().toLowerCase();
+    }
+
+    private List<Map<String, Integer>> dictionaries() {
+        List<Map<String, Integer>> dictionaries = new ArrayList<>();
+        dictionaries.add(genreBitmaps);
+        dictionaries.add(directorBitmaps);
+        dictionaries.add(titleGrams);
+        return dictionaries;
+    }
+
+    private BitSet unionOfKeysContaining(Map<String, Integer> bitmaps, String needle) {
+        BitSet result = new BitSet(size);
+        for (Map.Entry<String, Integer> entry : bitmaps.entrySet()) {
+            if (entry.getKey().contains(needle)) {
+                orInto(result, entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sets the positions of the encoded bitmap at {@code offset} in {@code target}.
+     */
+    private void orInto(BitSet target, int offset) {
+        int count = encoded.getInt(offset);
+        if (count >= 0) {
+            for (int i = 0; i < count; i++) {
+                target.set(encoded.getInt(offset + 4 + i * 4));
+            }
+        } else {
+            long[] words = new long[-count];
+            ByteBuffer view = encoded.duplicate();
+            view.position(offset + 4);
+            view.asLongBuffer().get(words);
+            target.or(BitSet.valueOf(words));
+        }
+    }
+
+    private static boolean storedAsPositions(BitSet bitmap) {
+        return bitmap.cardinality() * 4 <= words(bitmap) * 8;
+    }
+
+    private static int encodedSize(BitSet bitmap) {
+        return 4 + (storedAsPositions(bitmap) ? bitmap.cardinality() * 4 : words(bitmap) * 8);
+    }
+
+    private static int words(BitSet bitmap) {
+        return (bitmap.length() + 63) / 64;
+    }
+
+    private static BitSet bitmapFor(Map<String, BitSet> bitmaps, String key) {
+        BitSet bitmap = bitmaps.get(key);
+        if (bitmap == null) {
+            bitmap = new BitSet();
+            bitmaps.put(key, bitmap);
+        }
+        return bitmap;
+    }
+}
@@ -2,57 +2,363 @@ package com.amazonaws.samples.qdevmovies.movies;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.Scanner;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.IntPredicate;
 
 @Service
 public class MovieService {
     private static final Logger logger = LogManager.getLogger(MovieService.class);
-    private final List<Movie> movies;
-    private final Map<Long, Movie> movieMap;
+    // Follows catalogs kept on the heap, updated movie by movie; a snapshot brings its own
+    private MovieTextIndex textIndex = new MovieTextIndex();
+    private final SingleFlight<String, List<Movie>> searchFlights = new SingleFlight<>();
+    private final Path catalogPath;
+    private final Path snapshotPath;
+    private final CatalogScan catalogScan;
+    private volatile Catalog catalog;
+    private final List<CatalogListener> catalogListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Notified of every movie that leaves or enters the catalog. A changed movie is reported
+     * as removed in its old version and added in its new one.
+     */
+    public interface CatalogListener {
+        void catalogChanged(Collection<Movie> removed, Collection<Movie> added);
+    }
+
+    /**
+     * One consistent version of the catalog. Positional indexes only make sense against the
+     * list they were built from, so a reload swaps all of them together.
+     * A catalog opened from a snapshot keeps no movies on the heap: rows and id lookups are
+     * decoded from the mapped file on demand, and its indexes are the ones the snapshot was
+     * written with, read in place.
+     */
+    private static class Catalog {
+        final List<Movie> movies;
+        final MovieSnapshot snapshot;
+        final Map<Long, Movie> movieMap;
+        final MovieSearchIndex searchIndex;
+        final SimilarMovies similarMovies;
+        final List<String> genres;
+        final MovieTextIndex textIndex;
+        // Catalog position of each full-text document, -1 for documents not in this catalog;
+        // null when documents are numbered by catalog position, as in a snapshot
+        final int[] textPositions;
+
+        Catalog(List<Movie> movies, CatalogScan scan, MovieTextIndex textIndex) {
+            if (movies instanceof MovieSnapshot) {
+                this.snapshot = (MovieSnapshot) movies;
+                this.movies = snapshot;
+                this.movieMap = Collections.emptyMap();
+                this.searchIndex = snapshot.searchIndex();
+                this.similarMovies = snapshot.similarMovies();
+                this.genres = snapshot.genres();
+                this.textIndex = snapshot.textIndex();
+                this.textPositions = null;
+            } else {
+                this.snapshot = null;
+                this.movies = Collections.unmodifiableList(new ArrayList<>(movies));
+                this.movieMap = new HashMap<>();
+                for (Movie movie : movies) {
+                    movieMap.put(movie.getId(), movie);
+                }
+                this.searchIndex = new MovieSearchIndex(this.movies);
+                this.similarMovies = SimilarMovies.build(this.movies, scan);
+                this.genres = genresOf(this.movies);
+                this.textIndex = textIndex;
+                this.textPositions = textIndex.positionsByDoc(this.movies);
+            }
+        }
+
+        Movie findById(long id) {
+            return snapshot != null ? snapshot.findById(id) : movieMap.get(id);
+        }
+    }
 
     public MovieService() {
-        this.movies = loadMoviesFromJson();
-        this.movieMap = new HashMap<>();
+        this("");
+    }
+
+    public MovieService(String snapshotPath) {
+        this(snapshotPath, 0);
+    }
+
+    public MovieService(String snapshotPath, int scanParallelism) {
+        this("", snapshotPath, scanParallelism);
+    }
+
+    /**
+     * @param catalogPath Catalog JSON file to load instead of the bundled movies.json; only
+     *                    an external file can change at runtime and be reloaded. Empty for
+     *                    the bundled catalog.
+     * @param snapshotPath Binary catalog snapshot to map at startup instead of parsing
+     *                     the catalog JSON; written from the JSON when it does not exist yet
+     *                     or was built from a different version of it. Empty to always load
+     *                     the JSON.
+     * @param scanParallelism Threads for parallel title scans; 0 for one per core, 1 to
+     *                        always scan sequentially
+     */
+    @Autowired
+    public MovieService(@Value("${movies.catalog-path:}") String catalogPath,
+                        @Value("${movies.snapshot-path:}") String snapshotPath,
+                        @Value("${movies.scan-parallelism:0}") int scanParallelism) {
+        this.catalogScan = new CatalogScan(scanParallelism > 0 ? scanParallelism : Runtime.getRuntime().availableProcessors());
+        this.catalogPath = toPath(catalogPath);
+        this.snapshotPath = toPath(snapshotPath);
+        long start = System.nanoTime();
+        // Hashing the JSON is much cheaper than parsing it, and tells whether the snapshot is current
+        byte[] source = readCatalogSource();
+        byte[] sourceHash = source != null ? MovieSnapshot.sourceHash(source) : null;
+        List<Movie> initial = this.snapshotPath != null && Files.exists(this.snapshotPath)
+            ? openSnapshot(sourceHash)
+            : null;
+        String loadedFrom = "snapshot " + this.snapshotPath;
+        if (initial == null) {
+            initial = writeSnapshot(parseMovies(source), sourceHash);
+            loadedFrom = describeSource();
+        }
+        replaceCatalog(initial);
+        Runtime runtime = Runtime.getRuntime();
+        logger.info("Catalog ready from {} in {} ms, heap in use {} KB", loadedFrom,
+            (System.nanoTime() - start) / 1_000_000, (runtime.totalMemory() - runtime.freeMemory()) / 1024);
+    }
+
+    private static Path toPath(String path) {
+        return path == null || path.trim().isEmpty() ? null : Paths.get(path.trim());
+    }
+
+    /**
+     * Re-reads the external catalog file and swaps in the new catalog, refreshing the
+     * snapshot if one is configured. Without a snapshot, the full-text index is updated only
+     * for movies that were added, removed or changed; a snapshot is written with all of its
+     * indexes built afresh.
+     *
+     * @return the number of movies in the reloaded catalog
+     * @throws IllegalStateException if no external catalog is configured, or if the file
+     *         yields no movies; the current catalog is kept
+     */
+    public synchronized int reloadCatalog() {
+        if (catalogPath == null) {
+            throw new IllegalStateException("No movies.catalog-path configured; the bundled catalog cannot change");
+        }
+        byte[] source = readCatalogSource();
+        List<Movie> reloaded = parseMovies(source);
+        if (reloaded.isEmpty()) {
+            logger.warn("Catalog reload found no movies in {}, keeping the current {} movies", catalogPath, getAllMovies().size());
+            throw new IllegalStateException("No movies found in " + catalogPath);
+        }
+        replaceCatalog(writeSnapshot(reloaded, MovieSnapshot.sourceHash(source)));
+        return reloaded.size();
+    }
+
+    synchronized void replaceCatalog(List<Movie> newMovies) {
+        Catalog current = catalog;
+        // The heap text index can only be updated incrementally if it follows the current
+        // catalog; otherwise it starts afresh, or is dropped when the snapshot brings its own
+        boolean indexText = !(newMovies instanceof MovieSnapshot);
+        boolean incremental = indexText && current != null && current.snapshot == null;
+        if (!incremental) {
+            textIndex = new MovieTextIndex();
+        }
+        List<Movie> removed = new ArrayList<>();
+        List<Movie> added = new ArrayList<>();
+        int reindexed = 0;
+        if (current == null) {
+            // Everything is new, so there is nothing to diff and no snapshot row to decode
+            added = newMovies;
+            if (indexText) {
+                for (Movie movie : newMovies) {
+                    textIndex.addMovie(movie);
+                }
+                reindexed = newMovies.size();
+            }
+        } else {
+            Map<Long, Movie> previous = new HashMap<>();
+            for (Movie movie : current.movies) {
+                previous.put(movie.getId(), movie);
+            }
+            Set<Long> incoming = new HashSet<>();
+            for (Movie movie : newMovies) {
+                incoming.add(movie.getId());
+                Movie old = previous.get(movie.getId());
+                if (indexText && (!incremental || old == null || !sameText(old, movie))) {
+                    textIndex.addMovie(movie);
+                    reindexed++;
+                }
+                if (old == null || !sameFields(old, movie)) {
+                    if (old != null) {
+                        removed.add(old);
+                    }
+                    added.add(movie);
+                }
+            }
+            for (Map.Entry<Long, Movie> entry : previous.entrySet()) {
+                if (!incoming.contains(entry.getKey())) {
+                    if (incremental) {
+                        textIndex.removeMovie(entry.getKey());
+                        reindexed++;
+                    }
+                    removed.add(entry.getValue());
+                }
+            }
+        }
+        this.catalog = new Catalog(newMovies, catalogScan, textIndex);
+        for (CatalogListener listener : catalogListeners) {
+            listener.catalogChanged(removed, added);
+        }
+        logger.info("Catalog loaded with {} movies, {} text index updates", newMovies.size(), reindexed);
+    }
+
+    /**
+     * Maps the configured snapshot if it was built from the current catalog source.
+     *
+     * @param sourceHash Hash of the catalog source, or null if the source could not be read,
+     *                   in which case the snapshot is used as it is
+     * @return the snapshot, or null if it is missing, unreadable or stale
+     */
+    private List<Movie> openSnapshot(byte[] sourceHash) {
+        try {
+            MovieSnapshot snapshot = MovieSnapshot.open(snapshotPath);
+            if (sourceHash == null) {
+                logger.warn("Catalog source {} unreadable, serving snapshot {} as it is", describeSource(), snapshotPath);
+                return snapshot;
+            }
+            if (!snapshot.matchesSource(sourceHash)) {
+                logger.info("Movie snapshot {} was built from a different {}, rebuilding it", snapshotPath, describeSource());
+                return null;
+            }
+            return snapshot;
+        } catch (Exception e) {
+            logger.error("Failed to open movie snapshot {}, falling back to JSON: {}", snapshotPath, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Writes the movies to the configured snapshot and maps it, so the running catalog
+     * matches what the next startup will see. Returns the movies unchanged when no snapshot
+     * is configured or writing fails.
+     */
+    private List<Movie> writeSnapshot(List<Movie> movies, byte[] sourceHash) {
+        if (snapshotPath == null || movies.isEmpty()) {
+            return movies;
+        }
+        try {
+            MovieSnapshot.write(movies, sourceHash, catalogScan, snapshotPath);
+            return MovieSnapshot.open(snapshotPath);
+        } catch (Exception e) {
+            logger.error("Failed to write movie snapshot {}: {}", snapshotPath, e.getMessage());
+            return movies;
+        }
+    }
+
+    /**
+     * Registers a listener and immediately reports the current catalog to it as added.
+     */
+    public synchronized void addCatalogListener(CatalogListener listener) {
+        listener.catalogChanged(Collections.<Movie>emptyList(), catalog.movies);
+        catalogListeners.add(listener);
+    }
+
+    /**
+     * @return the distinct genres of the movies, sorted
+     */
+    static List<String> genresOf(List<Movie> movies) {
+        Set<String> distinctGenres = new TreeSet<>();
         for (Movie movie : movies) {
-            movieMap.put(movie.getId(), movie);
+            distinctGenres.add(movie.getGenre());
+        }
+        return Collections.unmodifiableList(new ArrayList<>(distinctGenres));
+    }
+
+    private static boolean sameFields(Movie a, Movie b) {
+        return sameText(a, b)
+            && a.getYear() == b.getYear()
+            && Objects.equals(a.getGenre(), b.getGenre())
+            && a.getDuration() == b.getDuration()
+            && a.getImdbRating() == b.getImdbRating();
+    }
+
+    private static boolean sameText(Movie a, Movie b) {
+        return Objects.equals(a.getMovieName(), b.getMovieName())
+            && Objects.equals(a.getDirector(), b.getDirector())
+            && Objects.equals(a.getDescription(), b.getDescription());
+    }
+
+    private String describeSource() {
+        return catalogPath != null ? catalogPath.toString() : "movies.json";
+    }
+
+    /**
+     * @return the raw catalog JSON, from the external catalog file if one is configured and
+     *         the bundled movies.json otherwise; null if it cannot be read
+     */
+    private byte[] readCatalogSource() {
+        try (InputStream inputStream = catalogPath != null
+                ? Files.newInputStream(catalogPath)
+                : getClass().getClassLoader().getResourceAsStream("movies.json")) {
+            if (inputStream == null) {
+                logger.error("Failed to load movies from JSON: movies.json not found");
+                return null;
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = inputStream.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            logger.error("Failed to load movies from JSON: {}", e.getMessage());
+            return null;
         }
     }
 
-    private List<Movie> loadMoviesFromJson() {
+    private List<Movie> parseMovies(byte[] source) {
         List<Movie> movieList = new ArrayList<>();
+        if (source == null) {
+            return movieList;
+        }
         try {
-            InputStream inputStream = getClass().getClassLoader().getResourceAsStream("movies.json");
-            if (inputStream != null) {
-                Scanner scanner = new Scanner(inputStream, StandardCharsets.UTF_8.name());
-                String jsonContent = scanner.useDelimiter("\\A").next();
-                scanner.close();
-                
-                JSONArray moviesArray = new JSONArray(jsonContent);
-                for (int i = 0; i < moviesArray.length(); i++) {
-                    JSONObject movieObj = moviesArray.getJSONObject(i);
-                    movieList.add(new Movie(
-                        movieObj.getLong("id"),
-                        movieObj.getString("movieName"),
-                        movieObj.getString("director"),
-                        movieObj.getInt("year"),
-                        movieObj.getString("genre"),
-                        movieObj.getString("description"),
-                        movieObj.getInt("duration"),
-                        movieObj.getDouble("imdbRating")
-                    ));
-                }
+            JSONArray moviesArray = new JSONArray(new String(source, StandardCharsets.UTF_8));
+            for (int i = 0; i < moviesArray.length(); i++) {
+                JSONObject movieObj = moviesArray.getJSONObject(i);
+                movieList.add(new Movie(
+                    movieObj.getLong("id"),
+                    movieObj.getString("movieName"),
+                    movieObj.getString("director"),
+                    movieObj.getInt("year"),
+                    movieObj.getString("genre"),
+                    movieObj.getString("description"),
+                    movieObj.getInt("duration"),
+                    movieObj.getDouble("imdbRating")
+                ));
             }
         } catch (Exception e) {
             logger.error("Failed to load movies from JSON: {}", e.getMessage());
@@ -61,14 +367,14 @@ public class MovieService {
     }
 
     public List<Movie> getAllMovies() {
-        return movies;
+        return catalog.movies;
     }
 
     public Optional<Movie> getMovieById(Long id) {
         if (id == null || id <= 0) {
             return Optional.empty();
         }
-        return Optional.ofNullable(movieMap.get(id));
+        return Optional.ofNullable(catalog.findById(id));
     }
 
     /**
@@ -81,59 +387,263 @@ public class MovieService {
      * @return List of movies matching the search criteria
      */
     public List<Movie> searchMovies(String name, Long id, String genre) {
-        logger.info("Ahoy! Searching for movies with name: {}, id: {}, genre: {}", name, id, genre);
-        
+        return searchMovies(name, id, genre, null);
+    }
+
+    /**
+     * Searches for movies based on the provided criteria, including director.
+     * Concurrent searches with the same normalized criteria share one computation, so a
+     * burst of identical queries runs the search once.
+     * 
+     * @param name Movie name to search for (partial match, case-insensitive)
+     * @param id Specific movie ID to find; takes precedence over all other criteria
+     * @param genre Genre to filter by (partial match, case-insensitive)
+     * @param director Director to filter by (partial match, case-insensitive)
+     * @return Unmodifiable list of movies matching the search criteria, in catalog order
+     */
+    public List<Movie> searchMovies(String name, Long id, String genre, String director) {
+        logger.info("Ahoy! Searching for movies with name: {}, id: {}, genre: {}, director: {}", name, id, genre, director);
+        List<Movie> results = searchFlights.execute(searchKey(name, id, genre, director),
+            () -> Collections.unmodifiableList(planSearch(name, id, genre, director).getResults()));
+        logger.info("Search completed! Found {} treasures matching yer criteria", results.size());
+        return results;
+    }
+
+    /**
+     * Plans and executes a search, recording the chosen access paths.
+     * An ID goes straight to the id lookup. Otherwise every indexed predicate (genre and
+     * director bitmaps, title trigrams) produces a candidate bitmap; they are intersected
+     * from most to least selective, and the name is verified on the survivors only.
+     * 
+     * @return the executed plan, including its results
+     */
+    public SearchPlan planSearch(String name, Long id, String genre, String director) {
+        Catalog current = catalog;
+        List<Movie> movies = current.movies;
+        MovieSearchIndex searchIndex = current.searchIndex;
+        SearchPlan plan = new SearchPlan(movies.size());
         List<Movie> results = new ArrayList<>();
-        
+        plan.setResults(results);
+
         // If searching by ID specifically, return that movie if it exists
-        if (id != null && id > 0) {
+        if (id != null) {
             Optional<Movie> movieById = getMovieById(id);
+            plan.addStep("id", "id-lookup", movieById.isPresent() ? 1 : 0);
             if (movieById.isPresent()) {
                 results.add(movieById.get());
                 logger.info("Found treasure by ID: {}", id);
-                return results;
             } else {
                 logger.warn("No treasure found with ID: {}", id);
-                return results; // Return empty list if ID not found
             }
+            return plan;
         }
-        
-        // Filter by name and/or genre
-        for (Movie movie : movies) {
-            boolean matches = true;
-            
-            // Check name match (case-insensitive partial match)
-            if (name != null && !name.trim().isEmpty()) {
-                matches = matches && movie.getMovieName().toLowerCase()
-                    .contains(name.trim().toLowerCase());
-            }
-            
-            // Check genre match (case-insensitive partial match)
-            if (genre != null && !genre.trim().isEmpty()) {
-                matches = matches && movie.getGenre().toLowerCase()
-                    .contains(genre.trim().toLowerCase());
-            }
-            
-            if (matches) {
+
+        String nameNeedle = toNeedle(name);
+        List<IndexedPredicate> predicates = indexedPredicates(searchIndex, nameNeedle, toNeedle(genre), toNeedle(director));
+        boolean titleIndexed = predicates.stream().anyMatch(predicate -> "name".equals(predicate.field));
+        BitSet candidates = intersect(movies.size(), predicates, plan);
+
+        if (nameNeedle == null) {
+            for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+                results.add(movies.get(i));
+            }
+        } else {
+            // Trigrams only narrow the candidates, so the name still has to be checked
+            int chunks = catalogScan.filter(movies, candidates,
+                movie -> movie.getMovieName().toLowerCase().contains(nameNeedle), results);
+            String accessPath = titleIndexed ? "title-verify" : "title-scan";
+            plan.addStep("name", chunks > 1 ? "parallel-" + accessPath : accessPath, results.size());
+        }
+        return plan;
+    }
+
+    /**
+     * Index-backed predicates of a search, most selective first. The title trigrams only
+     * narrow the candidates; a name still has to be verified on them.
+     */
+    private static List<IndexedPredicate> indexedPredicates(MovieSearchIndex searchIndex, String nameNeedle,
+                                                            String genreNeedle, String directorNeedle) {
+        List<IndexedPredicate> predicates = new ArrayList<>();
+        if (genreNeedle != null) {
+            predicates.add(new IndexedPredicate("genre", "genre-bitmap", searchIndex.matchGenre(genreNeedle)));
+        }
+        if (directorNeedle != null) {
+            predicates.add(new IndexedPredicate("director", "director-bitmap", searchIndex.matchDirector(directorNeedle)));
+        }
+        if (nameNeedle != null) {
+            BitSet titleCandidates = searchIndex.titleCandidates(nameNeedle);
+            if (titleCandidates != null) {
+                predicates.add(new IndexedPredicate("name", "title-trigram", titleCandidates));
+            }
+        }
+        predicates.sort(Comparator.comparingInt(predicate -> predicate.estimate));
+        return predicates;
+    }
+
+    /**
+     * @return catalog positions matching every predicate, recording each step in {@code plan} if given
+     */
+    private static BitSet intersect(int catalogSize, List<IndexedPredicate> predicates, SearchPlan plan) {
+        BitSet candidates = new BitSet(catalogSize);
+        candidates.set(0, catalogSize);
+        if (predicates.isEmpty() && plan != null) {
+            plan.addStep("none", "catalog-scan", catalogSize);
+        }
+        for (IndexedPredicate predicate : predicates) {
+            candidates.and(predicate.matches);
+            if (plan != null) {
+                plan.addStep(predicate.field, predicate.accessPath, candidates.cardinality());
+            }
+            if (candidates.isEmpty()) {
+                break;
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Gets the movies most similar to a movie by genre, director, year and rating. The
+     * neighbours are precomputed when the catalog loads, so this costs the same for every movie.
+     * 
+     * @param id Movie to find similar movies for
+     * @param limit Maximum number of movies to return
+     * @return Similar movies, most similar first; empty for an unknown movie
+     */
+    public List<Movie> getSimilarMovies(long id, int limit) {
+        Catalog current = catalog;
+        long[] neighbours = current.similarMovies.neighboursOf(id);
+        List<Movie> similar = new ArrayList<>(Math.min(limit, neighbours.length));
+        for (int i = 0; i < neighbours.length && similar.size() < limit; i++) {
+            Movie movie = current.findById(neighbours[i]);
+            if (movie != null) {
+                similar.add(movie);
+            }
+        }
+        return similar;
+    }
+
+    /**
+     * Full-text search over title, director and description, ranked by BM25.
+     * 
+     * @param query Free text to search for
+     * @param limit Maximum number of movies to return
+     * @return Matching movies, best match first
+     */
+    public List<Movie> searchByText(String query, int limit) {
+        return searchByText(query, limit, null, null, null, null);
+    }
+
+    /**
+     * Full-text search over title, director and description, ranked by BM25, restricted to
+     * the movies matching the other search criteria. The criteria are narrowed to a bitmap
+     * of catalog positions through the search indexes; the name itself, and an id, are only
+     * checked for documents that score high enough to make the results.
+     * 
+     * @param query Free text to search for
+     * @param limit Maximum number of movies to return
+     * @param name Movie name the results must contain, or null
+     * @param id Movie the results are restricted to, or null
+     * @param genre Genre the results must match, or null
+     * @param director Director the results must match, or null
+     * @return Matching movies, best match first
+     */
+    public List<Movie> searchByText(String query, int limit, String name, Long id, String genre, String director) {
+        Catalog current = catalog;
+        String nameNeedle = toNeedle(name);
+        IntPredicate allowedDocs = null;
+        if (id != null) {
+            allowedDocs = doc -> {
+                int position = positionOf(current, doc);
+                return position >= 0 && current.movies.get(position).getId() == id;
+            };
+        } else if (nameNeedle != null || toNeedle(genre) != null || toNeedle(director) != null) {
+            BitSet within = intersect(current.movies.size(),
+                indexedPredicates(current.searchIndex, nameNeedle, toNeedle(genre), toNeedle(director)), null);
+            allowedDocs = doc -> {
+                int position = positionOf(current, doc);
+                return position >= 0 && within.get(position)
+                    && (nameNeedle == null || current.movies.get(position).getMovieName().toLowerCase().contains(nameNeedle));
+            };
+        }
+        List<Movie> results = new ArrayList<>();
+        for (MovieTextIndex.Hit hit : current.textIndex.search(query, limit, allowedDocs)) {
+            Movie movie = current.findById(hit.getMovieId());
+            if (movie != null) {
                 results.add(movie);
             }
         }
-        
-        logger.info("Search completed! Found {} treasures matching yer criteria", results.size());
+        logger.info("Full-text search for '{}' found {} treasures", query, results.size());
         return results;
     }
 
+    /**
+     * Documents added by a reload still in progress are not in {@code current} yet.
+     */
+    private static int positionOf(Catalog current, int doc) {
+        if (current.textPositions == null) {
+            return doc;
+        }
+        return doc < current.textPositions.length ? current.textPositions[doc] : -1;
+    }
+
+    /**
+     * Key under which equivalent searches coalesce: criteria are compared as the search
+     * itself sees them, and an id makes the other criteria irrelevant.
+     */
+    private static String searchKey(String name, Long id, String genre, String director) {
+        if (id != null) {
+            return "id:" + id;
+        }
+        return Objects.toString(toNeedle(name), "") + '\u0000' + Objects.toString(toNeedle(genre), "")
+            + '\u0000' + Objects.toString(toNeedle(director), "");
+    }
+
+    @PreDestroy
+    public void close() {
+        catalogScan.shutdown();
+    }
+
+    public SingleFlight.Stats getSearchCoalescingStats() {
+        return searchFlights.getStats();
+    }
+
+    /**
+     * Starts the search coalescing counts afresh, e.g. once warm-up traffic is over.
+     */
+    public void resetSearchCoalescingStats() {
+        searchFlights.resetStats();
+    }
+
+    private static String toNeedle(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        return MovieSearchIndex.normalize(value);
+    }
+
+    private static class IndexedPredicate {
+        final String field;
+        final String accessPath;
+        final BitSet matches;
+        final int estimate;
+
+        IndexedPredicate(String field, String accessPath, BitSet matches) {
+            this.field = field;
+            this.accessPath = accessPath;
+            this.matches = matches;
+            this.estimate = matches.cardinality();
+        }
+    }
+
     /**
      * Gets all unique genres from the movie collection.
      * Useful for populating search dropdowns, ye savvy?
+     * Collected once when the catalog loads, so rendering the dropdown does not decode
+     * every movie of a snapshot-backed catalog.
      * 
-     * @return List of unique genres
+     * @return Sorted list of unique genres
      */
     public List<String> getAllGenres() {
-        return movies.stream()
-            .map(Movie::getGenre)
-            .distinct()
-            .sorted()
-            .collect(Collectors.toList());
+        return catalog.genres;
     }
 }
@@ -0,0 +1,339 @@
+package com.amazonaws.samples.qdevmovies.movies;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Read-only movie catalog backed by a memory-mapped binary snapshot.
+ * Movies are decoded from the mapped region on access instead of being parsed and kept
+ * on the heap. Layout, all big-endian:
+ * <pre>
+ * header      magic, version, row count, reserved          (4 ints)
+ *             SHA-256 of the source JSON                   (32 bytes)
+ *             offsets of the search index, text index,
+ *             similar movies and genres sections           (4 ints)
+ * rows        id, year, duration, imdbRating,
+ *             name, director, genre, description refs      (40 bytes per movie)
+ * id index    (id, row) pairs sorted by id                 (12 bytes per movie)
+ * strings     count, offsets[count], then length-prefixed UTF-8 values
+ * sections    as encoded by {@link MovieSearchIndex}, {@link MovieTextIndex} and
+ *             {@link SimilarMovies}, then the distinct genres as a count and
+ *             length-prefixed UTF-8 values
+ * </pre>
+ * Repeated strings such as genres and directors are stored once in the string table.
+ * The indexes a catalog needs are built when the snapshot is written and read in place
+ * when it is mapped, so a start from a snapshot neither decodes the movies nor rebuilds
+ * anything.
+ * The source hash identifies the catalog JSON the snapshot was built from, so a snapshot
+ * left over from an older catalog can be detected and rebuilt.
+ */
+public class MovieSnapshot extends AbstractList<Movie> implements RandomAccess {
+    static final int MAGIC = 0x514D4F56; // "QMOV"
+    static final int VERSION = 3;
+    static final int HASH_BYTES = 32;
+    static final int SECTIONS = 4;
+    static final int HEADER_BYTES = 16 + HASH_BYTES + SECTIONS * 4;
+    private static final int SEARCH_INDEX = 0;
+    private static final int TEXT_INDEX = 1;
+    private static final int SIMILAR_MOVIES = 2;
+    private static final int GENRES = 3;
+    static final int ROW_BYTES = 40;
+    static final int ID_ENTRY_BYTES = 12;
+
+    private final MappedByteBuffer buffer;
+    private final int rowCount;
+    private final int idIndexOffset;
+    private final int stringOffsetsOffset;
+    private final int stringDataOffset;
+
+    private MovieSnapshot(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a movie snapshot");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported movie snapshot version " + buffer.getInt(4));
+        }
+        this.rowCount = buffer.getInt(8);
+        this.idIndexOffset = HEADER_BYTES + rowCount * ROW_BYTES;
+        int stringTableOffset = idIndexOffset + rowCount * ID_ENTRY_BYTES;
+        int stringCount = buffer.getInt(stringTableOffset);
+        this.stringOffsetsOffset = stringTableOffset + 4;
+        this.stringDataOffset = stringOffsetsOffset + stringCount * 4;
+    }
+
+    /**
+     * Maps an existing snapshot file. The mapping stays valid after the channel is closed.
+     */
+    public static MovieSnapshot open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new MovieSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * @return the SHA-256 of a catalog source, as stored in the snapshot header
+     */
+    public static byte[] sourceHash(byte[] source) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(source);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Writes the movies as a snapshot without a source hash, so it matches no source.
+     */
+    public static void write(List<Movie> movies, Path path) throws IOException {
+        write(movies, new byte[HASH_BYTES], path);
+    }
+
+    /**
+     * Writes the movies as a snapshot, building its indexes sequentially.
+     */
+    public static void write(List<Movie> movies, byte[] sourceHash, Path path) throws IOException {
+        write(movies, sourceHash, new CatalogScan(1), path);
+    }
+
+    /**
+     * Writes the movies and their indexes as a snapshot. The file is written next to the
+     * target and moved into place, so a concurrent reader never maps a half-written snapshot.
+     *
+     * @param sourceHash {@link #sourceHash} of the catalog JSON the movies were parsed from
+     * @param scan Pool the similar movies are scored on
+     */
+    public static void write(List<Movie> movies, byte[] sourceHash, CatalogScan scan, Path path) throws IOException {
+        if (sourceHash.length != HASH_BYTES) {
+            throw new IllegalArgumentException("source hash must be " + HASH_BYTES + " bytes");
+        }
+        List<String> strings = new ArrayList<>();
+        Map<String, Integer> stringRefs = new HashMap<>();
+        ByteBuffer rows = ByteBuffer.allocate(movies.size() * ROW_BYTES);
+        long[][] idIndex = new long[movies.size()][];
+        for (int row = 0; row < movies.size(); row++) {
+            Movie movie = movies.get(row);
+            rows.putLong(movie.getId());
+            rows.putInt(movie.getYear());
+            rows.putInt(movie.getDuration());
+            rows.putDouble(movie.getImdbRating());
+            rows.putInt(intern(movie.getMovieName(), strings, stringRefs));
+            rows.putInt(intern(movie.getDirector(), strings, stringRefs));
+            rows.putInt(intern(movie.getGenre(), strings, stringRefs));
+            rows.putInt(intern(movie.getDescription(), strings, stringRefs));
+            idIndex[row] = new long[] {movie.getId(), row};
+        }
+        Arrays.sort(idIndex, (a, b) -> Long.compare(a[0], b[0]));
+
+        List<byte[]> encoded = new ArrayList<>(strings.size());
+        int stringBytes = 0;
+        for (String value : strings) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            encoded.add(bytes);
+            stringBytes += 4 + bytes.length;
+        }
+
+        byte[][] sections = new byte[SECTIONS][];
+        sections[SEARCH_INDEX] = MovieSearchIndex.encode(movies);
+        sections[TEXT_INDEX] = MovieTextIndex.encode(movies);
+        sections[SIMILAR_MOVIES] = SimilarMovies.encode(movies, scan);
+        sections[GENRES] = encodeStrings(MovieService.genresOf(movies));
+
+        ByteBuffer out = ByteBuffer.allocate(HEADER_BYTES + rows.capacity() + movies.size() * ID_ENTRY_BYTES
+            + 4 + strings.size() * 4 + stringBytes);
+        out.putInt(MAGIC).putInt(VERSION).putInt(movies.size()).putInt(0);
+        out.put(sourceHash);
+        int sectionOffset = out.capacity();
+        for (byte[] section : sections) {
+            out.putInt(sectionOffset);
+            sectionOffset += section.length;
+        }
+        rows.flip();
+        out.put(rows);
+        for (long[] entry : idIndex) {
+            out.putLong(entry[0]).putInt((int) entry[1]);
+        }
+        out.putInt(strings.size());
+        int offset = 0;
+        for (byte[] bytes : encoded) {
+            out.putInt(offset);
+            offset += 4 + bytes.length;
+        }
+        for (byte[] bytes : encoded) {
+            out.putInt(bytes.length).put(bytes);
+        }
+        out.flip();
+
+        Path absolute = path.toAbsolutePath();
+        Path temp = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+            for (byte[] section : sections) {
+                ByteBuffer bytes = ByteBuffer.wrap(section);
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+            }
+            channel.force(true);
+        }
+        Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return whether the snapshot was built from the catalog source with this {@link #sourceHash}
+     */
+    public boolean matchesSource(byte[] sourceHash) {
+        byte[] stored = new byte[HASH_BYTES];
+        ByteBuffer view = buffer.duplicate();
+        view.position(16);
+        view.get(stored);
+        return MessageDigest.isEqual(stored, sourceHash);
+    }
+
+    /**
+     * @return the title, genre and director bitmaps of the snapshot's movies, read in place
+     */
+    public MovieSearchIndex searchIndex() {
+        return new MovieSearchIndex(section(SEARCH_INDEX));
+    }
+
+    /**
+     * @return a read-only full-text index whose document numbers are snapshot rows
+     */
+    public MovieTextIndex textIndex() {
+        return new MovieTextIndex(section(TEXT_INDEX));
+    }
+
+    public SimilarMovies similarMovies() {
+        return new SimilarMovies(section(SIMILAR_MOVIES));
+    }
+
+    /**
+     * @return the distinct genres of the snapshot's movies, sorted
+     */
+    public List<String> genres() {
+        ByteBuffer genres = section(GENRES);
+        List<String> values = new ArrayList<>(genres.getInt(0));
+        int position = 4;
+        while (position < genres.limit()) {
+            byte[] bytes = new byte[genres.getInt(position)];
+            genres.position(position + 4);
+            genres.get(bytes);
+            values.add(new String(bytes, StandardCharsets.UTF_8));
+            position += 4 + bytes.length;
+        }
+        return Collections.unmodifiableList(values);
+    }
+
+    @Override
+    public Movie get(int row) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + rowCount);
+        }
+        int base = HEADER_BYTES + row * ROW_BYTES;
+        return new Movie(
+            buffer.getLong(base),
+            string(buffer.getInt(base + 24)),
+            string(buffer.getInt(base + 28)),
+            buffer.getInt(base + 8),
+            string(buffer.getInt(base + 32)),
+            string(buffer.getInt(base + 36)),
+            buffer.getInt(base + 12),
+            buffer.getDouble(base + 16)
+        );
+    }
+
+    @Override
+    public int size() {
+        return rowCount;
+    }
+
+    /**
+     * Looks a movie up through the snapshot's sorted id index.
+     *
+     * @return the movie, or null if the snapshot has no movie with this id
+     */
+    public Movie findById(long id) {
+        int low = 0;
+        int high = rowCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int entry = idIndexOffset + mid * ID_ENTRY_BYTES;
+            long midId = buffer.getLong(entry);
+            if (midId < id) {
+                low = mid + 1;
+            } else if (midId > id) {
+                high = mid - 1;
+            } else {
+                return get(buffer.getInt(entry + 8));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return a view of one index section, positioned at its start
+     */
+    private ByteBuffer section(int section) {
+        int start = buffer.getInt(16 + HASH_BYTES + section * 4);
+        int end = section + 1 < SECTIONS ? buffer.getInt(16 + HASH_BYTES + (section + 1) * 4) : buffer.capacity();
+        ByteBuffer view = buffer.duplicate();
+        view.position(start);
+        view.limit(end);
+        return view.slice();
+    }
+
+    private static byte[] encodeStrings(List<String> values) {
+        List<byte[]> encoded = new ArrayList<>(values.size());
+        int length = 4;
+        for (String value : values) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            encoded.add(bytes);
+            length += 4 + bytes.length;
+        }
+        ByteBuffer out = ByteBuffer.allocate(length);
+        out.putInt(values.size());
+        for (byte[] bytes : encoded) {
+            out.putInt(bytes.length).put(bytes);
+        }
+        return out.array();
+    }
+
+    private String string(int ref) {
+        int position = stringDataOffset + buffer.getInt(stringOffsetsOffset + ref * 4);
+        byte[] bytes = new byte[buffer.getInt(position)];
+        ByteBuffer view = buffer.duplicate();
+        view.position(position + 4);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int intern(String value, List<String> strings, Map<String, Integer> stringRefs) {
+        Integer ref = stringRefs.get(value);
+        if (ref == null) {
+            ref = strings.size();
+            strings.add(value);
+            stringRefs.put(value, ref);
+        }
+        return ref;
+    }
+}
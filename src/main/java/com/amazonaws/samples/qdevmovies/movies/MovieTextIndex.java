@@ -0,0 +1,924 @@
+package com.amazonaws.samples.qdevmovies.movies;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+
+/**
+ * In-memory inverted index over movie title, director and description, ranked with BM25.
+ * Each indexed movie gets a document number, handed out in increasing order, so posting
+ * lists stay sorted by document just by appending; the index can therefore be updated one
+ * movie at a time when the catalog is reloaded.
+ * <p>
+ * Queries are evaluated document at a time with MaxScore: terms whose combined score bound
+ * cannot reach the weakest of the best {@code limit} hits so far are only probed for
+ * documents that the other terms already made competitive, and each posting list keeps a
+ * score bound per block of {@link #BLOCK_SIZE} entries so blocks that cannot compete are
+ * skipped without being scored. A common term therefore costs about one check per block
+ * once the top hits are found, not one score per document.
+ * <p>
+ * An index can also be opened read-only over the encoded form a {@link MovieSnapshot}
+ * stores, with documents numbered by snapshot row. Postings, lengths and movie ids are
+ * then read in place from the mapped file and nothing is tokenized. Layout, all big-endian:
+ * <pre>
+ * header    document count, term count (ints), total length (long)
+ * ids       movie id per document                                  (longs)
+ * lengths   length per document                                    (ints)
+ * terms     (term offset, posting offset) per term, sorted by UTF-8 bytes
+ * term data length-prefixed UTF-8 terms
+ * postings  size, docs[size], freqs[size], the list's impacts, then
+ *           an offset per block and each block's impacts, where
+ *           impacts are a pair count then (freq, length) pairs
+ * </pre>
+ */
+public class MovieTextIndex {
+    static final double K1 = 1.2;
+    static final double B = 0.75;
+    static final int TITLE_BOOST = 2;
+    static final int BLOCK_SIZE = 128;
+    // Bounds are nudged up so rounding in a summed score never lets it exceed its bound
+    private static final double BOUND_SLACK = 1 + 1e-9;
+    private static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+    private static final Set<String> STOPWORDS = new HashSet<>(Arrays.asList(
+        "a", "an", "and", "are", "as", "at", "be", "but", "by", "for", "from", "has", "his", "her",
+        "in", "into", "is", "it", "its", "of", "on", "or", "that", "the", "their", "this", "to",
+        "was", "were", "while", "who", "will", "with"));
+
+    private final Map<String, Posting> postings = new HashMap<>();
+    private final Map<Long, Integer> docsByMovie = new HashMap<>();
+    // Per document number; the terms of a removed document are null
+    private long[] movieIds = new long[16];
+    private int[] lengths = new int[16];
+    private String[][] documentTerms = new String[16][];
+    private int nextDoc;
+    private int liveDocs;
+    private long totalLength;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // Set for a read-only index over an encoded snapshot section; the heap structures stay empty
+    private final Mapped mapped;
+
+    public static class Hit {
+        private final long movieId;
+        private final double score;
+
+        Hit(long movieId, double score) {
+            this.movieId = movieId;
+            this.score = score;
+        }
+
+        public long getMovieId() { return movieId; }
+        public double getScore() { return score; }
+    }
+
+    /**
+     * The (term frequency, document length) pairs of a set of postings that no other pair
+     * beats on both counts. BM25 grows with the frequency and shrinks with the length, so
+     * the best score in the set is the best score of one of these pairs, whatever the
+     * average document length is at query time. There are rarely more than a handful.
+     */
+    private static class Impacts {
+        // Pairs as freq, length, ..., both ascending
+        int[] pairs = new int[4];
+        int count;
+
+        void add(int freq, int length) {
+            int insertAt = 0;
+            for (int i = 0; i < count; i++) {
+                int otherFreq = pairs[2 * i];
+                int otherLength = pairs[2 * i + 1];
+                if (otherFreq >= freq && otherLength <= length) {
+                    return;
+                }
+                if (otherFreq < freq) {
+                    insertAt = i + 1;
+                }
+            }
+            // Drop the pairs the new one beats on both counts, then insert it in order
+            int kept = 0;
+            int[] merged = new int[2 * (count + 1)];
+            for (int i = 0; i <= count; i++) {
+                if (i == insertAt) {
+                    merged[2 * kept] = freq;
+                    merged[2 * kept + 1] = length;
+                    kept++;
+                }
+                if (i < count && !(pairs[2 * i] <= freq && pairs[2 * i + 1] >= length)) {
+                    merged[2 * kept] = pairs[2 * i];
+                    merged[2 * kept + 1] = pairs[2 * i + 1];
+                    kept++;
+                }
+            }
+            pairs = merged;
+            count = kept;
+        }
+
+        double bound(double idf, double averageLength) {
+            double best = 0;
+            for (int i = 0; i < count; i++) {
+                best = Math.max(best, termScore(idf, pairs[2 * i], pairs[2 * i + 1], averageLength));
+            }
+            return best * BOUND_SLACK;
+        }
+
+        /** {@link #bound} of impacts encoded at {@code at} as a pair count, then the pairs. */
+        static double bound(ByteBuffer buffer, int at, double idf, double averageLength) {
+            double best = 0;
+            int count = buffer.getInt(at);
+            for (int i = 0; i < count; i++) {
+                int pair = at + 4 + i * 8;
+                best = Math.max(best, termScore(idf, buffer.getInt(pair), buffer.getInt(pair + 4), averageLength));
+            }
+            return best * BOUND_SLACK;
+        }
+
+        int encodedSize() {
+            return 4 + count * 8;
+        }
+
+        void encode(DataOutputStream out) throws IOException {
+            out.writeInt(count);
+            for (int i = 0; i < 2 * count; i++) {
+                out.writeInt(pairs[i]);
+            }
+        }
+    }
+
+    /**
+     * Documents containing one term, in document order, with bounds on the BM25 score of
+     * any of them, for the whole list and per block of {@link #BLOCK_SIZE} entries.
+     */
+    private abstract static class PostingList {
+        abstract int size();
+
+        /** Entries whose document is still indexed, which the term's idf counts. */
+        abstract int live();
+
+        abstract int doc(int index);
+
+        abstract int freq(int index);
+
+        abstract double bound(double idf, double averageLength);
+
+        abstract double blockBound(int block, double idf, double averageLength);
+    }
+
+    /**
+     * Documents containing one term, in document order. Entries of removed documents stay
+     * until more than half of the list is dead, then the list is compacted. Every block of
+     * {@link #BLOCK_SIZE} entries keeps its {@link Impacts}, which bound the BM25 score of
+     * any document in the block.
+     */
+    private static class Posting extends PostingList {
+        int[] docs = new int[4];
+        int[] freqs = new int[4];
+        int size;
+        int live;
+        Impacts[] blocks = new Impacts[1];
+        Impacts impacts = new Impacts();
+
+        void add(int doc, int freq, int length) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                freqs = Arrays.copyOf(freqs, size * 2);
+            }
+            int block = size / BLOCK_SIZE;
+            if (size % BLOCK_SIZE == 0) {
+                if (block == blocks.length) {
+                    blocks = Arrays.copyOf(blocks, block * 2);
+                }
+                blocks[block] = new Impacts();
+            }
+            docs[size] = doc;
+            freqs[size] = freq;
+            size++;
+            live++;
+            blocks[block].add(freq, length);
+            impacts.add(freq, length);
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+
+        @Override
+        int live() {
+            return live;
+        }
+
+        @Override
+        int doc(int index) {
+            return docs[index];
+        }
+
+        @Override
+        int freq(int index) {
+            return freqs[index];
+        }
+
+        @Override
+        double bound(double idf, double averageLength) {
+            return impacts.bound(idf, averageLength);
+        }
+
+        @Override
+        double blockBound(int block, double idf, double averageLength) {
+            return blocks[block].bound(idf, averageLength);
+        }
+
+        int blockCount() {
+            return (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        }
+
+        int encodedSize() {
+            int bytes = 4 + size * 8 + impacts.encodedSize() + blockCount() * 4;
+            for (int block = 0; block < blockCount(); block++) {
+                bytes += blocks[block].encodedSize();
+            }
+            return bytes;
+        }
+
+        /** Writes the posting as a {@link MappedPosting} reads it, {@code at} bytes into the section. */
+        void encode(DataOutputStream out, int at) throws IOException {
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                out.writeInt(docs[i]);
+            }
+            for (int i = 0; i < size; i++) {
+                out.writeInt(freqs[i]);
+            }
+            impacts.encode(out);
+            int blockAt = at + 4 + size * 8 + impacts.encodedSize() + blockCount() * 4;
+            for (int block = 0; block < blockCount(); block++) {
+                out.writeInt(blockAt);
+                blockAt += blocks[block].encodedSize();
+            }
+            for (int block = 0; block < blockCount(); block++) {
+                blocks[block].encode(out);
+            }
+        }
+
+        void compact(int[] lengths, String[][] documentTerms) {
+            int[] oldDocs = docs;
+            int[] oldFreqs = freqs;
+            int oldSize = size;
+            docs = new int[Math.max(4, live)];
+            freqs = new int[docs.length];
+            blocks = new Impacts[Math.max(1, (live + BLOCK_SIZE - 1) / BLOCK_SIZE)];
+            impacts = new Impacts();
+            size = 0;
+            live = 0;
+            for (int i = 0; i < oldSize; i++) {
+                if (documentTerms[oldDocs[i]] != null) {
+                    add(oldDocs[i], oldFreqs[i], lengths[oldDocs[i]]);
+                }
+            }
+        }
+    }
+
+    /**
+     * A posting list read in place from an encoded index, as {@link Posting#encode} wrote it.
+     */
+    private static class MappedPosting extends PostingList {
+        final ByteBuffer buffer;
+        final int size;
+        final int docsAt;
+        final int freqsAt;
+        final int impactsAt;
+        final int blocksAt;
+
+        MappedPosting(ByteBuffer buffer, int at) {
+            this.buffer = buffer;
+            this.size = buffer.getInt(at);
+            this.docsAt = at + 4;
+            this.freqsAt = docsAt + size * 4;
+            this.impactsAt = freqsAt + size * 4;
+            this.blocksAt = impactsAt + 4 + buffer.getInt(impactsAt) * 8;
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+
+        @Override
+        int live() {
+            return size;
+        }
+
+        @Override
+        int doc(int index) {
+            return buffer.getInt(docsAt + index * 4);
+        }
+
+        @Override
+        int freq(int index) {
+            return buffer.getInt(freqsAt + index * 4);
+        }
+
+        @Override
+        double bound(double idf, double averageLength) {
+            return Impacts.bound(buffer, impactsAt, idf, averageLength);
+        }
+
+        @Override
+        double blockBound(int block, double idf, double averageLength) {
+            return Impacts.bound(buffer, buffer.getInt(blocksAt + block * 4), idf, averageLength);
+        }
+    }
+
+    /**
+     * The per-document arrays and term dictionary of an encoded index.
+     */
+    private static class Mapped {
+        final ByteBuffer buffer;
+        final int docCount;
+        final int termCount;
+        final int idsAt;
+        final int lengthsAt;
+        final int termsAt;
+
+        Mapped(ByteBuffer buffer) {
+            this.buffer = buffer;
+            this.docCount = buffer.getInt(0);
+            this.termCount = buffer.getInt(4);
+            this.idsAt = 16;
+            this.lengthsAt = idsAt + docCount * 8;
+            this.termsAt = lengthsAt + docCount * 4;
+        }
+
+        long movieId(int doc) {
+            return buffer.getLong(idsAt + doc * 8);
+        }
+
+        int length(int doc) {
+            return buffer.getInt(lengthsAt + doc * 4);
+        }
+
+        /** Binary search over the sorted term table. */
+        PostingList posting(String term) {
+            byte[] key = term.getBytes(StandardCharsets.UTF_8);
+            int low = 0;
+            int high = termCount - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int entry = termsAt + mid * 8;
+                int compared = compareTerm(buffer.getInt(entry), key);
+                if (compared < 0) {
+                    low = mid + 1;
+                } else if (compared > 0) {
+                    high = mid - 1;
+                } else {
+                    return new MappedPosting(buffer, buffer.getInt(entry + 4));
+                }
+            }
+            return null;
+        }
+
+        private int compareTerm(int at, byte[] key) {
+            int length = buffer.getInt(at);
+            for (int i = 0; i < length && i < key.length; i++) {
+                int compared = Integer.compare(buffer.get(at + 4 + i) & 0xFF, key[i] & 0xFF);
+                if (compared != 0) {
+                    return compared;
+                }
+            }
+            return Integer.compare(length, key.length);
+        }
+    }
+
+    /**
+     * Position in one term's posting list while a query runs.
+     */
+    private static class Cursor {
+        final PostingList posting;
+        final int size;
+        final double idf;
+        final double averageLength;
+        final double upperBound;
+        int position;
+        private int boundBlock = -1;
+        private double blockBound;
+
+        Cursor(PostingList posting, double idf, double averageLength) {
+            this.posting = posting;
+            this.size = posting.size();
+            this.idf = idf;
+            this.averageLength = averageLength;
+            this.upperBound = posting.bound(idf, averageLength);
+        }
+
+        int doc() {
+            return position < size ? posting.doc(position) : NO_MORE_DOCS;
+        }
+
+        /** Score of the current document, whose length is {@code length}. */
+        double score(int length) {
+            return termScore(idf, posting.freq(position), length, averageLength);
+        }
+
+        /** Last document of the block holding the current position. */
+        int blockLastDoc() {
+            return posting.doc(Math.min(size, (position / BLOCK_SIZE + 1) * BLOCK_SIZE) - 1);
+        }
+
+        /** Highest score any document of the current block can get from this term. */
+        double blockBound() {
+            int block = position / BLOCK_SIZE;
+            if (block != boundBlock) {
+                boundBlock = block;
+                blockBound = posting.blockBound(block, idf, averageLength);
+            }
+            return blockBound;
+        }
+
+        /** Moves to the first entry at or after {@code target}, galloping then bisecting. */
+        void advance(int target) {
+            if (position >= size || posting.doc(position) >= target) {
+                return;
+            }
+            // Everything before low is below the target
+            int low = position + 1;
+            int step = 1;
+            while (low + step - 1 < size && posting.doc(low + step - 1) < target) {
+                low += step;
+                step *= 2;
+            }
+            int high = Math.min(size, low + step - 1);
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (posting.doc(mid) < target) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            position = low;
+        }
+    }
+
+    /**
+     * Bounded min-heap of the best hits, weakest at the root, on primitive arrays.
+     */
+    private class TopHits {
+        final int[] docs;
+        final double[] scores;
+        int size;
+
+        TopHits(int limit) {
+            docs = new int[limit];
+            scores = new double[limit];
+        }
+
+        boolean isFull() {
+            return size == docs.length;
+        }
+
+        /** Score a document must reach to be kept; ties are decided by movie id. */
+        double threshold() {
+            return scores[0];
+        }
+
+        boolean offer(int doc, double score) {
+            if (size < docs.length) {
+                docs[size] = doc;
+                scores[size] = score;
+                siftUp(size++);
+                return true;
+            }
+            if (!weaker(docs[0], scores[0], doc, score)) {
+                return false;
+            }
+            docs[0] = doc;
+            scores[0] = score;
+            siftDown(0);
+            return true;
+        }
+
+        /** Whether hit a ranks below hit b: lower score, or equal score and higher movie id. */
+        private boolean weaker(int docA, double scoreA, int docB, double scoreB) {
+            return scoreA < scoreB || scoreA == scoreB && movieId(docA) > movieId(docB);
+        }
+
+        private void siftUp(int index) {
+            while (index > 0) {
+                int parent = (index - 1) / 2;
+                if (!weaker(docs[index], scores[index], docs[parent], scores[parent])) {
+                    return;
+                }
+                swap(index, parent);
+                index = parent;
+            }
+        }
+
+        private void siftDown(int index) {
+            while (true) {
+                int weakest = index;
+                for (int child = 2 * index + 1; child <= 2 * index + 2 && child < size; child++) {
+                    if (weaker(docs[child], scores[child], docs[weakest], scores[weakest])) {
+                        weakest = child;
+                    }
+                }
+                if (weakest == index) {
+                    return;
+                }
+                swap(index, weakest);
+                index = weakest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int doc = docs[a];
+            docs[a] = docs[b];
+            docs[b] = doc;
+            double score = scores[a];
+            scores[a] = scores[b];
+            scores[b] = score;
+        }
+
+        List<Hit> hits() {
+            List<Hit> hits = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                hits.add(new Hit(movieId(docs[i]), scores[i]));
+            }
+            hits.sort(Comparator.comparingDouble(Hit::getScore).reversed().thenComparingLong(Hit::getMovieId));
+            return hits;
+        }
+    }
+
+    public MovieTextIndex() {
+        this.mapped = null;
+    }
+
+    /**
+     * Opens a read-only index over its encoded form, as written by {@link #encode}.
+     */
+    MovieTextIndex(ByteBuffer encoded) {
+        this.mapped = new Mapped(encoded);
+        this.nextDoc = mapped.docCount;
+        this.liveDocs = mapped.docCount;
+        this.totalLength = encoded.getLong(8);
+    }
+
+    /**
+     * Indexes the movies and encodes the index in the layout described above, numbering
+     * documents by position in the list.
+     */
+    static byte[] encode(List<Movie> movies) {
+        MovieTextIndex index = new MovieTextIndex();
+        for (Movie movie : movies) {
+            // Duplicate ids keep a document each, so document numbers stay list positions
+            index.index(movie, false);
+        }
+        return index.encode();
+    }
+
+    public void addMovie(Movie movie) {
+        index(movie, true);
+    }
+
+    private void index(Movie movie, boolean replace) {
+        checkWritable();
+        Map<String, Integer> termFrequencies = new HashMap<>();
+        int length = 0;
+        for (String token : tokenize(movie.getMovieName())) {
+            termFrequencies.merge(token, TITLE_BOOST, Integer::sum);
+            length += TITLE_BOOST;
+        }
+        for (String token : tokenize(movie.getDirector())) {
+            termFrequencies.merge(token, 1, Integer::sum);
+            length++;
+        }
+        for (String token : tokenize(movie.getDescription())) {
+            termFrequencies.merge(token, 1, Integer::sum);
+            length++;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (replace) {
+                removeMovieLocked(movie.getId());
+            }
+            if (nextDoc == movieIds.length) {
+                movieIds = Arrays.copyOf(movieIds, nextDoc * 2);
+                lengths = Arrays.copyOf(lengths, nextDoc * 2);
+                documentTerms = Arrays.copyOf(documentTerms, nextDoc * 2);
+            }
+            int doc = nextDoc++;
+            movieIds[doc] = movie.getId();
+            lengths[doc] = length;
+            documentTerms[doc] = termFrequencies.keySet().toArray(new String[0]);
+            for (Map.Entry<String, Integer> entry : termFrequencies.entrySet()) {
+                postings.computeIfAbsent(entry.getKey(), term -> new Posting()).add(doc, entry.getValue(), length);
+            }
+            docsByMovie.put(movie.getId(), doc);
+            liveDocs++;
+            totalLength += length;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeMovie(long movieId) {
+        checkWritable();
+        lock.writeLock().lock();
+        try {
+            removeMovieLocked(movieId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return liveDocs;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Maps document numbers to positions in a catalog, so a search can be restricted to a
+     * bitmap of catalog positions.
+     *
+     * @return the position of each document's movie in {@code movies}, -1 for documents
+     *         whose movie is not in it
+     */
+    public int[] positionsByDoc(List<Movie> movies) {
+        Map<Long, Integer> positionsById = new HashMap<>(movies.size() * 2);
+        for (int position = 0; position < movies.size(); position++) {
+            positionsById.put(movies.get(position).getId(), position);
+        }
+        lock.readLock().lock();
+        try {
+            int[] positions = new int[nextDoc];
+            Arrays.fill(positions, -1);
+            for (int doc = 0; doc < nextDoc; doc++) {
+                Integer position = isLive(doc) ? positionsById.get(movieId(doc)) : null;
+                if (position != null) {
+                    positions[doc] = position;
+                }
+            }
+            return positions;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<Hit> search(String query, int limit) {
+        return search(query, limit, null);
+    }
+
+    /**
+     * Ranks indexed movies against the query.
+     *
+     * @param query Free text; tokenized the same way as the indexed fields
+     * @param limit Maximum number of hits to return
+     * @param allowedDocs If not null, only documents it accepts may be returned; it is only
+     *                    asked about documents that score high enough to be kept
+     * @return Hits ordered by descending score, ties broken by ascending id
+     */
+    public List<Hit> search(String query, int limit, IntPredicate allowedDocs) {
+        Set<String> terms = new HashSet<>(tokenize(query));
+        if (terms.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+
+        lock.readLock().lock();
+        try {
+            if (liveDocs == 0) {
+                return Collections.emptyList();
+            }
+            double averageLength = (double) totalLength / liveDocs;
+            List<Cursor> cursors = new ArrayList<>(terms.size());
+            for (String term : terms) {
+                PostingList posting = mapped != null ? mapped.posting(term) : postings.get(term);
+                if (posting != null) {
+                    double idf = Math.log(1 + (liveDocs - posting.live() + 0.5) / (posting.live() + 0.5));
+                    cursors.add(new Cursor(posting, idf, averageLength));
+                }
+            }
+            if (cursors.isEmpty()) {
+                return Collections.emptyList();
+            }
+            cursors.sort(Comparator.comparingDouble(cursor -> cursor.upperBound));
+            return topHits(cursors.toArray(new Cursor[0]), limit, allowedDocs);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * MaxScore over cursors sorted by ascending bound. Cursors below {@code essential} are
+     * the non-essential terms: together they cannot lift a document over the threshold, so
+     * only documents found through the essential cursors are considered.
+     */
+    private List<Hit> topHits(Cursor[] cursors, int limit, IntPredicate allowedDocs) {
+        int count = cursors.length;
+        double[] prefixBounds = new double[count];
+        double sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += cursors[i].upperBound;
+            prefixBounds[i] = sum;
+        }
+        TopHits top = new TopHits(limit);
+        int essential = 0;
+        while (true) {
+            int doc = NO_MORE_DOCS;
+            for (int i = essential; i < count; i++) {
+                doc = Math.min(doc, cursors[i].doc());
+            }
+            if (doc == NO_MORE_DOCS) {
+                break;
+            }
+            double nonEssentialBound = essential > 0 ? prefixBounds[essential - 1] : 0.0;
+
+            if (top.isFull()) {
+                // Up to the end of the nearest block, no document can beat the block bounds
+                int upTo = NO_MORE_DOCS;
+                double bound = nonEssentialBound;
+                for (int i = essential; i < count; i++) {
+                    if (cursors[i].doc() != NO_MORE_DOCS) {
+                        upTo = Math.min(upTo, cursors[i].blockLastDoc());
+                        bound += cursors[i].blockBound();
+                    }
+                }
+                if (bound < top.threshold()) {
+                    for (int i = essential; i < count; i++) {
+                        cursors[i].advance(upTo + 1);
+                    }
+                    continue;
+                }
+            }
+
+            if (isLive(doc)) {
+                int length = length(doc);
+                double score = 0;
+                for (int i = essential; i < count; i++) {
+                    if (cursors[i].doc() == doc) {
+                        score += cursors[i].score(length);
+                    }
+                }
+                boolean competitive = true;
+                for (int i = essential - 1; i >= 0 && competitive; i--) {
+                    if (top.isFull() && score + prefixBounds[i] < top.threshold()) {
+                        competitive = false;
+                    } else {
+                        cursors[i].advance(doc);
+                        if (cursors[i].doc() == doc) {
+                            score += cursors[i].score(length);
+                        }
+                    }
+                }
+                if (competitive && (!top.isFull() || score >= top.threshold())
+                        && (allowedDocs == null || allowedDocs.test(doc)) && top.offer(doc, score)) {
+                    while (essential < count && top.isFull() && prefixBounds[essential] < top.threshold()) {
+                        essential++;
+                    }
+                }
+            }
+            for (int i = essential; i < count; i++) {
+                if (cursors[i].doc() == doc) {
+                    cursors[i].advance(doc + 1);
+                }
+            }
+        }
+        return top.hits();
+    }
+
+    private boolean isLive(int doc) {
+        return mapped != null || documentTerms[doc] != null;
+    }
+
+    private int length(int doc) {
+        return mapped != null ? mapped.length(doc) : lengths[doc];
+    }
+
+    private long movieId(int doc) {
+        return mapped != null ? mapped.movieId(doc) : movieIds[doc];
+    }
+
+    private void checkWritable() {
+        if (mapped != null) {
+            throw new UnsupportedOperationException("A text index opened from a snapshot is read-only");
+        }
+    }
+
+    /**
+     * Encodes a freshly built index, whose documents are all live and numbered from 0.
+     */
+    private byte[] encode() {
+        List<byte[]> terms = new ArrayList<>(postings.size());
+        for (String term : postings.keySet()) {
+            terms.add(term.getBytes(StandardCharsets.UTF_8));
+        }
+        terms.sort(MovieTextIndex::compareBytes);
+        int termDataAt = 16 + nextDoc * 12 + terms.size() * 8;
+        int postingsAt = termDataAt;
+        for (byte[] term : terms) {
+            postingsAt += 4 + term.length;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(nextDoc);
+            out.writeInt(terms.size());
+            out.writeLong(totalLength);
+            for (int doc = 0; doc < nextDoc; doc++) {
+                out.writeLong(movieIds[doc]);
+            }
+            for (int doc = 0; doc < nextDoc; doc++) {
+                out.writeInt(lengths[doc]);
+            }
+            List<Posting> ordered = new ArrayList<>(terms.size());
+            int termAt = termDataAt;
+            int postingAt = postingsAt;
+            for (byte[] term : terms) {
+                Posting posting = postings.get(new String(term, StandardCharsets.UTF_8));
+                ordered.add(posting);
+                out.writeInt(termAt);
+                out.writeInt(postingAt);
+                termAt += 4 + term.length;
+                postingAt += posting.encodedSize();
+            }
+            for (byte[] term : terms) {
+                out.writeInt(term.length);
+                out.write(term);
+            }
+            postingAt = postingsAt;
+            for (Posting posting : ordered) {
+                posting.encode(out, postingAt);
+                postingAt += posting.encodedSize();
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int compareBytes(byte[] a, byte[] b) {
+        for (int i = 0; i < a.length && i < b.length; i++) {
+            int compared = Integer.compare(a[i] & 0xFF, b[i] & 0xFF);
+            if (compared != 0) {
+                return compared;
+            }
+        }
+        return Integer.compare(a.length, b.length);
+    }
+
+    private static double termScore(double idf, int freq, int length, double averageLength) {
+        double norm = K1 * (1 - B + B * length / averageLength);
+        return idf * freq * (K1 + 1) / (freq + norm);
+    }
+
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        for (String token : text.toLowerCase().split("[^\\p{L}\\p{N}]+")) {
+            if (token.length() > 1 && !STOPWORDS.contains(token)) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    private void removeMovieLocked(long movieId) {
+        Integer doc = docsByMovie.remove(movieId);
+        if (doc == null) {
+            return;
+        }
+        String[] terms = documentTerms[doc];
+        documentTerms[doc] = null;
+        liveDocs--;
+        totalLength -= lengths[doc];
+        for (String term : terms) {
+            Posting posting = postings.get(term);
+            posting.live--;
+            if (posting.live == 0) {
+                postings.remove(term);
+            } else if (posting.live * 2 < posting.size) {
+                posting.compact(lengths, documentTerms);
+            }
+        }
+    }
+}
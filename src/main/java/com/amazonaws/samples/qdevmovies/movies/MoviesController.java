@@ -2,20 +2,37 @@ package com.amazonaws.samples.qdevmovies.movies;
 
 import com.amazonaws.samples.qdevmovies.utils.MovieIconUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @Controller
 public class MoviesController {
     private static final Logger logger = LogManager.getLogger(MoviesController.class);
+    private static final int MAX_TEXT_RESULTS = 100;
+    private static final int REVIEWS_PAGE_SIZE = 10;
+    private static final int MAX_REVIEWS_PAGE_SIZE = 100;
+    private static final int SIMILAR_MOVIES = 4;
 
     @Autowired
     private MovieService movieService;
@@ -23,24 +40,39 @@ public class MoviesController {
     @Autowired
     private ReviewService reviewService;
 
+    @Autowired
+    private CatalogStatistics catalogStatistics;
+
+    @Autowired
+    private AdmissionControl admissionControl;
+
+    @Autowired
+    private ApplicationAvailability availability;
+
+    @Autowired
+    private WarmUp warmUp;
+
     @GetMapping("/movies")
     public String getMovies(org.springframework.ui.Model model,
                            @RequestParam(value = "name", required = false) String name,
                            @RequestParam(value = "id", required = false) Long id,
-                           @RequestParam(value = "genre", required = false) String genre) {
-        logger.info("Ahoy! Fetching movies with search criteria - name: {}, id: {}, genre: {}", name, id, genre);
+                           @RequestParam(value = "genre", required = false) String genre,
+                           @RequestParam(value = "director", required = false) String director) {
+        logger.info("Ahoy! Fetching movies with search criteria - name: {}, id: {}, genre: {}, director: {}", name, id, genre, director);
         
         List<Movie> movies;
         boolean isSearch = (name != null && !name.trim().isEmpty()) || 
                           (id != null && id > 0) || 
-                          (genre != null && !genre.trim().isEmpty());
+                          (genre != null && !genre.trim().isEmpty()) ||
+                          (director != null && !director.trim().isEmpty());
         
         if (isSearch) {
-            movies = movieService.searchMovies(name, id, genre);
+            movies = movieService.searchMovies(name, id != null && id > 0 ? id : null, genre, director);
             model.addAttribute("searchPerformed", true);
             model.addAttribute("searchName", name);
             model.addAttribute("searchId", id);
             model.addAttribute("searchGenre", genre);
+            model.addAttribute("searchDirector", director);
             
             if (movies.isEmpty()) {
                 model.addAttribute("noResults", true);
@@ -71,11 +103,87 @@ public class MoviesController {
         Movie movie = movieOpt.get();
         model.addAttribute("movie", movie);
         model.addAttribute("movieIcon", MovieIconUtils.getMovieIcon(movie.getMovieName()));
-        model.addAttribute("allReviews", reviewService.getReviewsForMovie(movie.getId()));
+        model.addAttribute("reviewPage", reviewService.getReviewPage(movie.getId(), ReviewSort.NEWEST, null, REVIEWS_PAGE_SIZE));
+        model.addAttribute("similarMovies", movieService.getSimilarMovies(movie.getId(), SIMILAR_MOVIES));
         
         return "movie-details";
     }
 
+    /**
+     * REST API endpoint for one page of a movie's reviews. The page is written to the
+     * response as it is serialized rather than buffered.
+     * 
+     * @param movieId Movie to get reviews for
+     * @param sort Ordering: newest, highest or lowest
+     * @param cursor Cursor from the previous page's nextCursor, omitted for the first page
+     * @param limit Maximum number of reviews on the page
+     * @return JSON page of reviews, 404 for an unknown movie, 400 for a bad sort or cursor
+     */
+    @GetMapping(value = "/movies/{id}/reviews", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> getMovieReviews(@PathVariable("id") Long movieId,
+                                                                 @RequestParam(value = "sort", defaultValue = "newest") String sort,
+                                                                 @RequestParam(value = "cursor", required = false) String cursor,
+                                                                 @RequestParam(value = "limit", defaultValue = "20") int limit) {
+        if (!movieService.getMovieById(movieId).isPresent()) {
+            logger.warn("Movie with ID {} not found", movieId);
+            return ResponseEntity.notFound().build();
+        }
+        
+        ReviewPage page;
+        try {
+            page = reviewService.getReviewPage(movieId, ReviewSort.fromParam(sort), cursor,
+                Math.max(1, Math.min(limit, MAX_REVIEWS_PAGE_SIZE)));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+        StreamingResponseBody body = out -> page.writeJson(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    /**
+     * REST API endpoint for the movies most similar to a movie by genre, director, year and
+     * rating, served from neighbour lists computed when the catalog loads.
+     * 
+     * @param movieId Movie to find similar movies for
+     * @param limit Maximum number of movies to return
+     * @return JSON list of similar movies, most similar first, or 404 for an unknown movie
+     */
+    @GetMapping("/movies/{id}/similar")
+    public ResponseEntity<List<Movie>> getSimilarMovies(@PathVariable("id") Long movieId,
+                                                        @RequestParam(value = "limit", defaultValue = "4") int limit) {
+        if (!movieService.getMovieById(movieId).isPresent()) {
+            logger.warn("Movie with ID {} not found", movieId);
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(movieService.getSimilarMovies(movieId, Math.max(1, Math.min(limit, SimilarMovies.NEIGHBOURS))));
+    }
+
+    /**
+     * REST API endpoint for submitting a review. Responds once the review is durable.
+     * 
+     * @param movieId Movie being reviewed
+     * @param request Review with userName, rating (0.5 to 5.0), comment and optional avatarEmoji
+     * @return 201 with the stored review, 404 for an unknown movie, 400 for an invalid review
+     */
+    @PostMapping(value = "/movies/{id}/reviews", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Review> submitReview(@PathVariable("id") Long movieId, @RequestBody ReviewRequest request) {
+        if (!movieService.getMovieById(movieId).isPresent()) {
+            logger.warn("Movie with ID {} not found", movieId);
+            return ResponseEntity.notFound().build();
+        }
+        
+        try {
+            Review review = reviewService.submitReview(movieId, request.getUserName(), request.getAvatarEmoji(),
+                request.getRating(), request.getComment());
+            return ResponseEntity.status(HttpStatus.CREATED).body(review);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        } catch (IllegalStateException e) {
+            logger.error("Scurvy bug storing review for movie {}: {}", movieId, e.getMessage());
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Arrr! Yer review could not be stored, matey!", e);
+        }
+    }
+
     /**
      * REST API endpoint for movie search - returns JSON response
      * Ahoy! This be the treasure map for other ships (applications) to find movies!
@@ -83,25 +191,40 @@ public class MoviesController {
      * @param name Movie name to search for
      * @param id Specific movie ID to find  
      * @param genre Genre to filter by
+     * @param director Director to filter by
+     * @param q Free text matched against title, director and description, ranked by relevance
+     * @param limit Maximum number of ranked results when {@code q} is given
      * @return JSON list of matching movies
      */
     @GetMapping("/movies/search")
     @ResponseBody
     public List<Movie> searchMoviesApi(@RequestParam(value = "name", required = false) String name,
                                       @RequestParam(value = "id", required = false) Long id,
-                                      @RequestParam(value = "genre", required = false) String genre) {
-        logger.info("Ahoy! API search request - name: {}, id: {}, genre: {}", name, id, genre);
+                                      @RequestParam(value = "genre", required = false) String genre,
+                                      @RequestParam(value = "director", required = false) String director,
+                                      @RequestParam(value = "q", required = false) String q,
+                                      @RequestParam(value = "limit", defaultValue = "10") int limit) {
+        logger.info("Ahoy! API search request - name: {}, id: {}, genre: {}, director: {}, q: {}", name, id, genre, director, q);
+        
+        boolean hasCriteria = (name != null && !name.trim().isEmpty()) || 
+            (id != null && id > 0) || 
+            (genre != null && !genre.trim().isEmpty()) ||
+            (director != null && !director.trim().isEmpty());
+        
+        // Full-text search: rank by relevance, restricted to the other criteria if any
+        if (q != null && !q.trim().isEmpty()) {
+            return movieService.searchByText(q, Math.max(1, Math.min(limit, MAX_TEXT_RESULTS)),
+                name, id != null && id > 0 ? id : null, genre, director);
+        }
         
         // Validate parameters
-        if ((name == null || name.trim().isEmpty()) && 
-            (id == null || id <= 0) && 
-            (genre == null || genre.trim().isEmpty())) {
+        if (!hasCriteria) {
             logger.warn("Arrr! Empty search criteria provided to API");
             return movieService.getAllMovies(); // Return all movies if no criteria provided
         }
         
         try {
-            List<Movie> results = movieService.searchMovies(name, id, genre);
+            List<Movie> results = movieService.searchMovies(name, id != null && id > 0 ? id : null, genre, director);
             logger.info("API search completed! Found {} treasures", results.size());
             return results;
         } catch (Exception e) {
@@ -109,4 +232,122 @@ public class MoviesController {
             throw new RuntimeException("Arrr! Something went wrong with the search, matey!", e);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * REST API endpoint for catalog statistics: counts per genre and decade, rating
+     * histogram, average duration and rating, top directors and review totals.
+     * 
+     * @param genre Genre to filter by, as in the search API
+     * @param year Single release year; shorthand for equal fromYear and toYear
+     * @param fromYear First release year to include
+     * @param toYear Last release year to include
+     * @return JSON statistics over the matching movies, 400 for an empty year range
+     */
+    @GetMapping("/movies/statistics")
+    @ResponseBody
+    public CatalogStatistics.Stats getCatalogStatistics(@RequestParam(value = "genre", required = false) String genre,
+                                                        @RequestParam(value = "year", required = false) Integer year,
+                                                        @RequestParam(value = "fromYear", required = false) Integer fromYear,
+                                                        @RequestParam(value = "toYear", required = false) Integer toYear) {
+        try {
+            return catalogStatistics.getStatistics(genre, year != null ? year : fromYear, year != null ? year : toYear);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Same search as {@link #searchMoviesApi}, but returns the query plan the service chose:
+     * each access path in evaluation order with its candidate count, plus the results.
+     * 
+     * @return the executed search plan
+     */
+    @GetMapping(value = "/movies/search", params = "explain=true")
+    @ResponseBody
+    public SearchPlan explainSearchApi(@RequestParam(value = "name", required = false) String name,
+                                       @RequestParam(value = "id", required = false) Long id,
+                                       @RequestParam(value = "genre", required = false) String genre,
+                                       @RequestParam(value = "director", required = false) String director) {
+        logger.info("Ahoy! API explain request - name: {}, id: {}, genre: {}, director: {}", name, id, genre, director);
+        return movieService.planSearch(name, id != null && id > 0 ? id : null, genre, director);
+    }
+
+    /**
+     * Admin endpoint that reloads the catalog from the external catalog file
+     * ({@code movies.catalog-path}). Only movies that changed are re-indexed for full-text
+     * search; searches in flight keep the catalog they started with.
+     *
+     * @return JSON with the number of movies in the reloaded catalog, or 409 if no external
+     *         catalog is configured or it holds no movies
+     */
+    @PostMapping("/admin/catalog/reload")
+    @ResponseBody
+    public Map<String, Integer> reloadCatalog() {
+        try {
+            return Collections.singletonMap("movies", movieService.reloadCatalog());
+        } catch (IllegalStateException e) {
+            logger.warn("Arrr! Catalog reload refused: {}", e.getMessage());
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Review cache hit, miss and eviction counts, with current and maximum size in bytes.
+     * 
+     * @return JSON review cache statistics
+     */
+    @GetMapping("/metrics/review-cache")
+    @ResponseBody
+    public ReviewCache.Stats getReviewCacheStats() {
+        return reviewService.getCacheStats();
+    }
+
+    /**
+     * Search calls, the executions they needed and the share of calls that joined an
+     * identical search already in flight.
+     * 
+     * @return JSON search coalescing statistics
+     */
+    @GetMapping("/metrics/search-coalescing")
+    @ResponseBody
+    public SingleFlight.Stats getSearchCoalescingStats() {
+        return movieService.getSearchCoalescingStats();
+    }
+
+    /**
+     * Current adaptive concurrency limit, with each endpoint class's share of it, in-flight
+     * requests and admitted and shed counts.
+     * 
+     * @return JSON admission control statistics
+     */
+    @GetMapping("/metrics/admission")
+    @ResponseBody
+    public AdmissionControl.Stats getAdmissionStats() {
+        return admissionControl.getStats();
+    }
+
+    /**
+     * Readiness probe for load balancers. The application refuses traffic until startup,
+     * including the JIT warm-up, has finished.
+     * 
+     * @return 200 once accepting traffic, 503 before
+     */
+    @GetMapping("/readiness")
+    public ResponseEntity<Map<String, String>> getReadiness() {
+        ReadinessState state = availability.getReadinessState();
+        return ResponseEntity.status(state == ReadinessState.ACCEPTING_TRAFFIC ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE)
+            .body(Collections.singletonMap("status", state.name()));
+    }
+
+    /**
+     * Warm-up state, duration and request count, with the latency of the first real
+     * requests served after startup.
+     * 
+     * @return JSON warm-up statistics
+     */
+    @GetMapping("/metrics/warmup")
+    @ResponseBody
+    public WarmUp.Stats getWarmUpStats() {
+        return warmUp.getStats();
+    }
+}
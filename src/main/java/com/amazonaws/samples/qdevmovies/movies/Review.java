@@ -1,20 +1,34 @@
 package com.amazonaws.samples.qdevmovies.movies;
 
 public class Review {
+    private String id;
     private String userName;
     private String avatarEmoji;
     private double rating;
     private String comment;
+    private Long createdAt;
 
     public Review(String userName, String avatarEmoji, double rating, String comment) {
+        this(null, userName, avatarEmoji, rating, comment, null);
+    }
+
+    /**
+     * @param id Unique id of a submitted review; null for seeded reviews
+     * @param createdAt Submission time in epoch milliseconds; null for seeded reviews
+     */
+    public Review(String id, String userName, String avatarEmoji, double rating, String comment, Long createdAt) {
+        this.id = id;
         this.userName = userName;
         this.avatarEmoji = avatarEmoji;
         this.rating = rating;
         this.comment = comment;
+        this.createdAt = createdAt;
     }
 
+    public String getId() { return id; }
     public String getUserName() { return userName; }
     public String getAvatarEmoji() { return avatarEmoji; }
     public double getRating() { return rating; }
     public String getComment() { return comment; }
+    public Long getCreatedAt() { return createdAt; }
 }
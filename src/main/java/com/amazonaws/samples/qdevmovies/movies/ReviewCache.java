@@ -0,0 +1,194 @@
+package com.amazonaws.samples.qdevmovies.movies;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+
+/**
+ * Approximately least-recently-used cache of per-movie reviews, bounded by the serialized
+ * size of the cached reviews rather than by entry count. A single movie may use the whole
+ * budget. Lookups take no lock: entries live in a {@link ConcurrentHashMap} and are
+ * replaced whole, so a reader sees either the old or the new reviews of a movie. Only a
+ * write that pushes the cache over its budget takes the eviction lock, which readers never
+ * touch.
+ */
+public class ReviewCache {
+    private final long maxBytes;
+    private final ConcurrentHashMap<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong currentBytes = new AtomicLong();
+    // Ticks on every access, ordering entries for eviction
+    private final AtomicLong clock = new AtomicLong();
+    private final Object evictionLock = new Object();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private static class Entry {
+        final MovieReviews reviews;
+        final long bytes;
+        volatile long lastAccess;
+
+        Entry(MovieReviews reviews, long bytes, long lastAccess) {
+            this.reviews = reviews;
+            this.bytes = bytes;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    /**
+     * An entry with its last access as it was when eviction looked, so the order it is
+     * sorted in cannot change under the sort.
+     */
+    private static class Candidate {
+        final long movieId;
+        final Entry entry;
+        final long lastAccess;
+
+        Candidate(long movieId, Entry entry) {
+            this.movieId = movieId;
+            this.entry = entry;
+            this.lastAccess = entry.lastAccess;
+        }
+    }
+
+    public static class Stats {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final int entries;
+        private final long bytes;
+        private final long maxBytes;
+
+        Stats(long hits, long misses, long evictions, int entries, long bytes, long maxBytes) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.entries = entries;
+            this.bytes = bytes;
+            this.maxBytes = maxBytes;
+        }
+
+        public long getHits() { return hits; }
+        public long getMisses() { return misses; }
+        public long getEvictions() { return evictions; }
+        public int getEntries() { return entries; }
+        public long getBytes() { return bytes; }
+        public long getMaxBytes() { return maxBytes; }
+        public double getHitRatio() { return hits + misses == 0 ? 0.0 : (double) hits / (hits + misses); }
+    }
+
+    public ReviewCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return the cached reviews, or null on a miss
+     */
+    public MovieReviews get(long movieId) {
+        Entry entry = entries.get(movieId);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        entry.lastAccess = clock.incrementAndGet();
+        return entry.reviews;
+    }
+
+    /**
+     * Caches reviews weighing {@code bytes}, evicting the least recently used movies until
+     * they fit. Reviews larger than the whole cache are not cached.
+     */
+    public void put(long movieId, MovieReviews reviews, long bytes) {
+        if (bytes > maxBytes) {
+            Entry stale = entries.remove(movieId);
+            if (stale != null) {
+                currentBytes.addAndGet(-stale.bytes);
+            }
+            return;
+        }
+        Entry previous = entries.put(movieId, new Entry(reviews, bytes, clock.incrementAndGet()));
+        currentBytes.addAndGet(previous != null ? bytes - previous.bytes : bytes);
+        evictUntilWithinBudget(movieId);
+    }
+
+    /**
+     * Replaces a cached movie's reviews with {@code update} applied to them, growing its
+     * weight by {@code addedBytes}. Does nothing if the movie is not cached. The update runs
+     * outside any lock and is swapped in atomically; if the entry changes meanwhile it is
+     * applied again to the new one, so it must have no side effects.
+     */
+    public void update(long movieId, UnaryOperator<MovieReviews> update, long addedBytes) {
+        while (true) {
+            Entry entry = entries.get(movieId);
+            if (entry == null) {
+                return;
+            }
+            long bytes = entry.bytes + addedBytes;
+            if (bytes > maxBytes) {
+                if (entries.remove(movieId, entry)) {
+                    currentBytes.addAndGet(-entry.bytes);
+                }
+                return;
+            }
+            Entry updated = new Entry(update.apply(entry.reviews), bytes, entry.lastAccess);
+            if (entries.replace(movieId, entry, updated)) {
+                currentBytes.addAndGet(addedBytes);
+                break;
+            }
+        }
+        evictUntilWithinBudget(movieId);
+    }
+
+    public Stats getStats() {
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), entries.size(), currentBytes.get(), maxBytes);
+    }
+
+    /**
+     * Zeroes the hit, miss and eviction counts; cached reviews are kept.
+     */
+    public void resetStats() {
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    }
+
+    /**
+     * Evicts the least recently used movies, never {@code keep}, until the cache is back
+     * within its budget. Writers that overflow the cache take turns here; readers do not.
+     */
+    private void evictUntilWithinBudget(long keep) {
+        if (currentBytes.get() <= maxBytes) {
+            return;
+        }
+        synchronized (evictionLock) {
+            while (currentBytes.get() > maxBytes) {
+                List<Candidate> candidates = new ArrayList<>();
+                for (Map.Entry<Long, Entry> entry : entries.entrySet()) {
+                    if (entry.getKey() != keep) {
+                        candidates.add(new Candidate(entry.getKey(), entry.getValue()));
+                    }
+                }
+                if (candidates.isEmpty()) {
+                    return;
+                }
+                candidates.sort(Comparator.comparingLong(candidate -> candidate.lastAccess));
+                for (Candidate candidate : candidates) {
+                    if (currentBytes.get() <= maxBytes) {
+                        return;
+                    }
+                    // Only this version of the entry: one replaced meanwhile was just written
+                    if (entries.remove(candidate.movieId, candidate.entry)) {
+                        currentBytes.addAndGet(-candidate.entry.bytes);
+                        evictions.increment();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package com.amazonaws.samples.qdevmovies.movies;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Append-only log of submitted reviews, one JSON record per line. A single writer thread
+ * drains every append queued while the previous batch was being synced and commits them
+ * together with one {@code force}, so the cost of an fsync is shared by concurrent writers.
+ * Records are not kept on the heap: every committed record is reported to a
+ * {@link CommitListener} with its position, and read back from the file by position.
+ */
+public class ReviewLog implements Closeable {
+    private static final Logger logger = LogManager.getLogger(ReviewLog.class);
+    static final int MAX_BATCH = 512;
+
+    private final FileChannel channel;
+    private final CommitListener listener;
+    private final BlockingQueue<PendingAppend> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private volatile boolean closed;
+    // End of the last complete record; only the writer thread moves it once open
+    private long size;
+    private long commits;
+    private long records;
+
+    /**
+     * Told about every committed record, in log order: the existing ones while the log is
+     * opened, and new ones on the writer thread after they are synced, before their
+     * appends complete.
+     */
+    public interface CommitListener {
+        void committed(long movieId, Review review, long position, int length);
+    }
+
+    private static class PendingAppend {
+        final long movieId;
+        final Review review;
+        final byte[] line;
+        final CompletableFuture<Void> committed = new CompletableFuture<>();
+        // Set by whichever comes first: the writer taking it into a batch, or its submitter withdrawing it
+        final AtomicBoolean claimed = new AtomicBoolean();
+
+        PendingAppend(long movieId, Review review, byte[] line) {
+            this.movieId = movieId;
+            this.review = review;
+            this.line = line;
+        }
+    }
+
+    /**
+     * Opens a log, reporting each of its complete records to {@code listener}. A torn
+     * record at the end of the log, left by a crash mid-write, is cut off.
+     */
+    public ReviewLog(Path path, CommitListener listener) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.listener = listener;
+        try {
+            this.size = scan();
+            if (size < channel.size()) {
+                logger.warn("Cutting off a torn record at the end of review log {} ({} bytes)", path, channel.size() - size);
+                channel.truncate(size);
+            }
+            channel.position(size);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        this.writer = new Thread(this::writeLoop, "review-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Reads the log front to back, one line at a time, reporting every readable record.
+     *
+     * @return the end of the last complete line
+     */
+    private long scan() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        long position = 0;
+        long lineStart = 0;
+        int lineNumber = 0;
+        while (channel.read(buffer, position) > 0) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                byte next = buffer.get();
+                position++;
+                if (next != '\n') {
+                    line.write(next);
+                    continue;
+                }
+                lineNumber++;
+                String text = new String(line.toByteArray(), StandardCharsets.UTF_8);
+                if (!text.trim().isEmpty()) {
+                    try {
+                        JSONObject record = new JSONObject(text);
+                        listener.committed(record.getLong("movieId"), ReviewService.toReview(record), lineStart, line.size());
+                    } catch (Exception e) {
+                        logger.warn("Skipping unreadable review log record at line {}: {}", lineNumber, e.getMessage());
+                    }
+                }
+                line.reset();
+                lineStart = position;
+            }
+            buffer.clear();
+        }
+        return lineStart;
+    }
+
+    /**
+     * Reads back one committed record.
+     *
+     * @param position Position reported to the {@link CommitListener}
+     * @param length Length reported to the {@link CommitListener}
+     */
+    public Review read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Review log truncated at position " + position);
+            }
+        }
+        return ReviewService.toReview(new JSONObject(new String(buffer.array(), StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Queues a review for the next group commit and waits until it is synced to disk. If it
+     * is still queued after {@code timeout}, or the wait is interrupted, it is withdrawn and
+     * will never be written, so the caller may safely retry. If the writer has already
+     * taken it, this waits for the outcome of that write instead.
+     *
+     * @throws TimeoutException if the review was withdrawn after the timeout
+     * @throws ExecutionException if the review could not be written
+     */
+    public void append(long movieId, Review review, long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        PendingAppend pending = enqueue(movieId, review);
+        try {
+            pending.committed.get(timeout, unit);
+        } catch (TimeoutException | InterruptedException e) {
+            if (pending.claimed.compareAndSet(false, true)) {
+                queue.remove(pending);
+                throw e;
+            }
+            awaitTakenWrite(pending, e instanceof InterruptedException);
+        }
+    }
+
+    /**
+     * Waits for a write already in progress; its outcome decides whether the review exists.
+     */
+    private static void awaitTakenWrite(PendingAppend pending, boolean interrupted) throws ExecutionException {
+        try {
+            while (true) {
+                try {
+                    pending.committed.get();
+                    return;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private PendingAppend enqueue(long movieId, Review review) {
+        JSONObject record = new JSONObject()
+            .put("movieId", movieId)
+            .put("id", review.getId())
+            .put("createdAt", review.getCreatedAt())
+            .put("userName", review.getUserName())
+            .put("avatarEmoji", review.getAvatarEmoji())
+            .put("rating", review.getRating())
+            .put("comment", review.getComment());
+        PendingAppend pending = new PendingAppend(movieId, review, (record.toString() + "\n").getBytes(StandardCharsets.UTF_8));
+        if (closed) {
+            pending.committed.completeExceptionally(new IllegalStateException("Review log is closed"));
+            return pending;
+        }
+        queue.add(pending);
+        return pending;
+    }
+
+    /**
+     * @return average number of records per fsync so far
+     */
+    public synchronized double getAverageBatchSize() {
+        return commits == 0 ? 0.0 : (double) records / commits;
+    }
+
+    private void writeLoop() {
+        List<PendingAppend> batch = new ArrayList<>(MAX_BATCH);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                PendingAppend first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH - 1);
+                // Drop appends whose submitters gave up waiting; the rest can no longer be withdrawn
+                batch.removeIf(pending -> !pending.claimed.compareAndSet(false, true));
+                if (!batch.isEmpty()) {
+                    commit(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                closed = true;
+            } finally {
+                batch.clear();
+            }
+        }
+        PendingAppend leftover;
+        while ((leftover = queue.poll()) != null) {
+            leftover.committed.completeExceptionally(new IllegalStateException("Review log is closed"));
+        }
+    }
+
+    private void commit(List<PendingAppend> batch) {
+        try {
+            ByteBuffer[] lines = new ByteBuffer[batch.size()];
+            for (int i = 0; i < batch.size(); i++) {
+                lines[i] = ByteBuffer.wrap(batch.get(i).line);
+            }
+            while (lines[lines.length - 1].hasRemaining()) {
+                channel.write(lines);
+            }
+            channel.force(false);
+            synchronized (this) {
+                commits++;
+                records += batch.size();
+            }
+        } catch (IOException e) {
+            logger.error("Failed to commit {} review log records: {}", batch.size(), e.getMessage());
+            for (PendingAppend pending : batch) {
+                pending.committed.completeExceptionally(e);
+            }
+            try {
+                // Drop whatever part of the batch made it in, so the next batch starts on a fresh line
+                channel.truncate(size);
+                channel.position(size);
+            } catch (IOException truncateFailure) {
+                logger.error("Failed to cut off uncommitted review log records: {}", truncateFailure.getMessage());
+            }
+            return;
+        }
+        for (PendingAppend pending : batch) {
+            int length = pending.line.length - 1;
+            try {
+                listener.committed(pending.movieId, pending.review, size, length);
+            } catch (RuntimeException e) {
+                logger.error("Failed to publish review {} for movie {}: {}", pending.review.getId(), pending.movieId, e.getMessage());
+            }
+            size += pending.line.length;
+            pending.committed.complete(null);
+        }
+    }
+
+    /**
+     * Commits everything already queued, then stops the writer.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+}
@@ -0,0 +1,60 @@
+package com.amazonaws.samples.qdevmovies.movies;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * One page of a movie's reviews, with the cursor to pass back for the next page.
+ */
+public class ReviewPage {
+    private final long movieId;
+    private final ReviewSort sort;
+    private final int total;
+    private final List<Review> reviews;
+    private final String nextCursor;
+
+    public ReviewPage(long movieId, ReviewSort sort, int total, List<Review> reviews, String nextCursor) {
+        this.movieId = movieId;
+        this.sort = sort;
+        this.total = total;
+        this.reviews = reviews;
+        this.nextCursor = nextCursor;
+    }
+
+    public long getMovieId() { return movieId; }
+    public ReviewSort getSort() { return sort; }
+    public int getTotal() { return total; }
+    public List<Review> getReviews() { return reviews; }
+    public String getNextCursor() { return nextCursor; }
+    public boolean isHasMore() { return nextCursor != null; }
+
+    /**
+     * Writes the page as JSON one review at a time, without building the whole document.
+     */
+    public void writeJson(Writer out) throws IOException {
+        out.write("{\"movieId\":" + movieId);
+        out.write(",\"sort\":" + JSONObject.quote(sort.name().toLowerCase()));
+        out.write(",\"total\":" + total);
+        out.write(",\"nextCursor\":" + (nextCursor == null ? "null" : JSONObject.quote(nextCursor)));
+        out.write(",\"reviews\":[");
+        for (int i = 0; i < reviews.size(); i++) {
+            Review review = reviews.get(i);
+            if (i > 0) {
+                out.write(',');
+            }
+            out.write(new JSONObject()
+                .put("id", review.getId())
+                .put("createdAt", review.getCreatedAt())
+                .put("userName", review.getUserName())
+                .put("avatarEmoji", review.getAvatarEmoji())
+                .put("rating", review.getRating())
+                .put("comment", review.getComment())
+                .toString());
+        }
+        out.write("]}");
+        out.flush();
+    }
+}
@@ -0,0 +1,20 @@
+package com.amazonaws.samples.qdevmovies.movies;
+
+/**
+ * Request body of the review submission API.
+ */
+public class ReviewRequest {
+    private String userName;
+    private String avatarEmoji;
+    private Double rating;
+    private String comment;
+
+    public String getUserName() { return userName; }
+    public void setUserName(String userName) { this.userName = userName; }
+    public String getAvatarEmoji() { return avatarEmoji; }
+    public void setAvatarEmoji(String avatarEmoji) { this.avatarEmoji = avatarEmoji; }
+    public Double getRating() { return rating; }
+    public void setRating(Double rating) { this.rating = rating; }
+    public String getComment() { return comment; }
+    public void setComment(String comment) { this.comment = comment; }
+}
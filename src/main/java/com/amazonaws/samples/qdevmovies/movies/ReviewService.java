@@ -2,46 +2,370 @@ package com.amazonaws.samples.qdevmovies.movies;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import javax.annotation.PreDestroy;
+import java.io.IOException;
 import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.Scanner;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @Service
 public class ReviewService {
     private static final Logger logger = LogManager.getLogger(ReviewService.class);
+    static final long DEFAULT_CACHE_BYTES = 1024 * 1024;
+    static final int WRITE_STRIPES = 64;
+    static final long COMMIT_TIMEOUT_SECONDS = 10;
+    static final int MAX_USER_NAME_LENGTH = 50;
+    static final int MAX_COMMENT_LENGTH = 2000;
+    // Room for emoji built from several code points, such as flags and ZWJ sequences
+    static final int MAX_AVATAR_LENGTH = 32;
+    static final String DEFAULT_AVATAR = "👤";
+    static final String DEFAULT_LOG_PATH = "data/reviews.log";
 
+    private final ReviewStore store;
+    private final ReviewCache cache;
+    private final ReviewLog reviewLog;
+    // Where each movie's submitted reviews are in the review log; the reviews stay on disk
+    private final Map<Long, LoggedReviews> logged = new ConcurrentHashMap<>();
+    // Order a movie's publishes against a cache miss loading that movie. Publishes all come
+    // from the review log's writer thread, so these separate loaders, not writers.
+    private final Object[] writeStripes = new Object[WRITE_STRIPES];
+    private final List<ReviewListener> reviewListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Notified of the review count and rating sum added to a movie.
+     */
+    public interface ReviewListener {
+        void reviewsAdded(long movieId, int reviewCount, double ratingSum);
+    }
+
+    /**
+     * Positions and lengths of one movie's records in the review log, with their count and
+     * rating sum. Only appended to, under the movie's write stripe; slots below
+     * {@code count} never change, so a reader can take the arrays and count under the
+     * stripe and read the records after releasing it.
+     */
+    private static class LoggedReviews {
+        long[] positions = new long[4];
+        int[] lengths = new int[4];
+        int count;
+        double ratingSum;
+
+        void add(long position, int length, double rating) {
+            if (count == positions.length) {
+                positions = Arrays.copyOf(positions, count * 2);
+                lengths = Arrays.copyOf(lengths, count * 2);
+            }
+            positions[count] = position;
+            lengths[count] = length;
+            count++;
+            ratingSum += rating;
+        }
+    }
+
+    /**
+     * Serves reviews without a review log, so submitting reviews is disabled.
+     */
+    public ReviewService() {
+        this("", DEFAULT_CACHE_BYTES, "");
+    }
+
+    /**
+     * @param storePath Local file for the indexed review data built from mock-reviews.json;
+     *                  empty to use a temporary file
+     * @param cacheBytes Upper bound on the serialized size of reviews kept on the heap
+     * @param logPath Append-only log of submitted reviews, indexed at startup; its
+     *                directory is created if needed. Empty disables review submission,
+     *                since reviews kept anywhere else would be lost on restart.
+     */
+    @Autowired
+    public ReviewService(@Value("${reviews.store-path:}") String storePath,
+                         @Value("${reviews.cache-bytes:1048576}") long cacheBytes,
+                         @Value("${reviews.log-path:" + DEFAULT_LOG_PATH + "}") String logPath) {
+        for (int i = 0; i < WRITE_STRIPES; i++) {
+            writeStripes[i] = new Object();
+        }
+        this.cache = new ReviewCache(cacheBytes);
+        this.reviewLog = openLog(logPath);
+        this.store = buildStore(resolve(storePath, "reviews", ".store"));
+    }
+
+    private ReviewLog openLog(String logPath) {
+        if (logPath == null || logPath.trim().isEmpty()) {
+            logger.error("Arrr! No reviews.log-path configured, review submission is disabled: "
+                + "submitted reviews would not survive a restart");
+            return null;
+        }
+        Path logFile = Paths.get(logPath.trim()).toAbsolutePath();
+        try {
+            Files.createDirectories(logFile.getParent());
+            ReviewLog opened = new ReviewLog(logFile, this::publish);
+            logger.info("Indexed review log {}, {} movies with submitted reviews", logFile, logged.size());
+            return opened;
+        } catch (Exception e) {
+            logged.clear();
+            logger.error("Failed to open review log {}, review submission is disabled: {}", logFile, e.getMessage());
+            return null;
+        }
+    }
+
+    private Path resolve(String configuredPath, String prefix, String suffix) {
+        if (configuredPath != null && !configuredPath.trim().isEmpty()) {
+            return Paths.get(configuredPath.trim());
+        }
+        try {
+            Path temp = Files.createTempFile(prefix, suffix);
+            temp.toFile().deleteOnExit();
+            return temp;
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to create temporary " + prefix + suffix + " file", e);
+        }
+    }
+
+    private ReviewStore buildStore(Path dataFile) {
+        try (InputStream inputStream = getClass().getClassLoader().getResourceAsStream("mock-reviews.json")) {
+            if (inputStream == null) {
+                logger.warn("mock-reviews.json not found, no reviews will be served");
+                return null;
+            }
+            ReviewStore built = ReviewStore.build(inputStream, dataFile);
+            logger.info("Indexed reviews for {} movies into {}", built.movieCount(), dataFile);
+            return built;
+        } catch (Exception e) {
+            logger.error("Failed to index reviews: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Gets the reviews for a movie in the order they were written.
+     *
+     * @param movieId Movie to get reviews for
+     * @return Unmodifiable list of reviews, empty if the movie has none
+     */
     public List<Review> getReviewsForMovie(long movieId) {
+        return getMovieReviews(movieId).getReviews();
+    }
+
+    /**
+     * Gets one page of a movie's reviews.
+     *
+     * @param movieId Movie to get reviews for
+     * @param sort Ordering of the reviews
+     * @param cursor Cursor returned with the previous page, or null for the first page
+     * @param limit Maximum number of reviews on the page
+     * @return The page, empty if the movie has no reviews
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public ReviewPage getReviewPage(long movieId, ReviewSort sort, String cursor, int limit) {
+        return getMovieReviews(movieId).page(sort, cursor, limit);
+    }
+
+    /**
+     * Submits a review. Returns once the review is durable in the review log; it is then
+     * visible to readers of the movie's reviews.
+     *
+     * @return The stored review with its id and timestamp
+     * @throws IllegalArgumentException if the review is invalid
+     * @throws IllegalStateException if the review could not be persisted; it was then not
+     *                               stored, so submitting it again cannot duplicate it
+     */
+    public Review submitReview(long movieId, String userName, String avatarEmoji, Double rating, String comment) {
+        if (userName == null || userName.trim().isEmpty() || userName.trim().length() > MAX_USER_NAME_LENGTH) {
+            throw new IllegalArgumentException("userName is required and must be at most " + MAX_USER_NAME_LENGTH + " characters");
+        }
+        // Written so NaN fails it too
+        if (rating == null || !(rating >= 0.5 && rating <= 5.0)) {
+            throw new IllegalArgumentException("rating must be between 0.5 and 5.0");
+        }
+        if (comment == null || comment.trim().isEmpty() || comment.length() > MAX_COMMENT_LENGTH) {
+            throw new IllegalArgumentException("comment is required and must be at most " + MAX_COMMENT_LENGTH + " characters");
+        }
+        if (avatarEmoji != null && avatarEmoji.trim().length() > MAX_AVATAR_LENGTH) {
+            throw new IllegalArgumentException("avatarEmoji must be at most " + MAX_AVATAR_LENGTH + " characters");
+        }
+        if (reviewLog == null) {
+            throw new IllegalStateException("Review submission is unavailable: no review log is open");
+        }
+        String avatar = avatarEmoji == null || avatarEmoji.trim().isEmpty() ? DEFAULT_AVATAR : avatarEmoji.trim();
+        Review review = new Review(UUID.randomUUID().toString(), userName.trim(), avatar, rating, comment.trim(),
+            System.currentTimeMillis());
+
+        try {
+            reviewLog.append(movieId, review, COMMIT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while persisting review", e);
+        } catch (TimeoutException e) {
+            // Withdrawn before the writer took it, so a retry cannot store it twice
+            throw new IllegalStateException("Timed out persisting review for movie " + movieId + ", it was not stored", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to persist review for movie " + movieId, e);
+        }
+
+        logger.info("Stored review {} for movie {}", review.getId(), movieId);
+        return review;
+    }
+
+    /**
+     * Makes a committed review log record visible: indexes its position, adds it to the
+     * movie's cached reviews and notifies listeners. Runs in log order, while the log is
+     * opened and then on its writer thread before the submitter is released.
+     */
+    private void publish(long movieId, Review review, long position, int length) {
+        // Only a cache miss for a movie on this stripe waits here; cache hits take no lock, and
+        // the copy with the new review is built before the cache swaps it in
+        synchronized (stripeFor(movieId)) {
+            logged.computeIfAbsent(movieId, id -> new LoggedReviews()).add(position, length, review.getRating());
+            cache.update(movieId, reviews -> reviews.withReview(review), weigh(review));
+            for (ReviewListener listener : reviewListeners) {
+                listener.reviewsAdded(movieId, 1, review.getRating());
+            }
+        }
+    }
+
+    /**
+     * Reads a movie's reviews from the review store on first access and serves them from
+     * the LRU cache afterwards.
+     */
+    private MovieReviews getMovieReviews(long movieId) {
+        boolean stored = store != null && store.contains(movieId);
+        if (!stored && !logged.containsKey(movieId)) {
+            return new MovieReviews(movieId, Collections.<Review>emptyList());
+        }
+        MovieReviews cached = cache.get(movieId);
+        if (cached != null) {
+            return cached;
+        }
+
         List<Review> reviews = new ArrayList<>();
+        long bytes = 0;
         try {
-            InputStream inputStream = getClass().getClassLoader().getResourceAsStream("mock-reviews.json");
-            if (inputStream != null) {
-                Scanner scanner = new Scanner(inputStream, StandardCharsets.UTF_8.name());
-                String jsonContent = scanner.useDelimiter("\\A").next();
-                scanner.close();
-                
-                JSONObject reviewsData = new JSONObject(jsonContent);
-                if (reviewsData.has(String.valueOf(movieId))) {
-                    JSONArray movieReviews = reviewsData.getJSONArray(String.valueOf(movieId));
-                    for (int i = 0; i < movieReviews.length(); i++) {
-                        JSONObject reviewObj = movieReviews.getJSONObject(i);
-                        reviews.add(new Review(
-                            reviewObj.getString("userName"),
-                            reviewObj.getString("avatarEmoji"),
-                            reviewObj.getDouble("rating"),
-                            reviewObj.getString("comment")
-                        ));
-                    }
+            if (stored) {
+                String segment = store.readSegment(movieId);
+                JSONArray movieReviews = new JSONArray(segment);
+                for (int i = 0; i < movieReviews.length(); i++) {
+                    reviews.add(toReview(movieReviews.getJSONObject(i)));
+                }
+                // Weigh by the UTF-16 size of the text, which is what the parsed reviews hold on the heap
+                bytes = 2L * segment.length();
+            }
+            // Read the submitted reviews known now without holding the stripe
+            long[] positions;
+            int[] lengths;
+            int count;
+            synchronized (stripeFor(movieId)) {
+                LoggedReviews inLog = logged.get(movieId);
+                positions = inLog != null ? inLog.positions : null;
+                lengths = inLog != null ? inLog.lengths : null;
+                count = inLog != null ? inLog.count : 0;
+            }
+            bytes += readLogged(positions, lengths, 0, count, reviews);
+
+            // Add any committed meanwhile and publish under the write stripe, so a concurrent
+            // submission is either in the loaded reviews or applied to them by publish
+            synchronized (stripeFor(movieId)) {
+                LoggedReviews inLog = logged.get(movieId);
+                if (inLog != null && inLog.count > count) {
+                    bytes += readLogged(inLog.positions, inLog.lengths, count, inLog.count, reviews);
                 }
+                MovieReviews loaded = new MovieReviews(movieId, reviews);
+                cache.put(movieId, loaded, bytes);
+                return loaded;
             }
         } catch (Exception e) {
             logger.error("Failed to load reviews for movie {}: {}", movieId, e.getMessage());
+            return new MovieReviews(movieId, Collections.<Review>emptyList());
+        }
+    }
+
+    /**
+     * Reads review log records {@code from} to {@code to} into {@code reviews}.
+     *
+     * @return their weight in the cache
+     */
+    private long readLogged(long[] positions, int[] lengths, int from, int to, List<Review> reviews) throws IOException {
+        long bytes = 0;
+        for (int i = from; i < to; i++) {
+            Review review = reviewLog.read(positions[i], lengths[i]);
+            reviews.add(review);
+            bytes += weigh(review);
+        }
+        return bytes;
+    }
+
+    static Review toReview(JSONObject reviewObj) {
+        return new Review(
+            reviewObj.has("id") ? reviewObj.getString("id") : null,
+            reviewObj.getString("userName"),
+            reviewObj.getString("avatarEmoji"),
+            reviewObj.getDouble("rating"),
+            reviewObj.getString("comment"),
+            reviewObj.has("createdAt") ? reviewObj.getLong("createdAt") : null
+        );
+    }
+
+    private static long weigh(Review review) {
+        return 2L * (review.getUserName().length() + review.getAvatarEmoji().length() + review.getComment().length()) + 128;
+    }
+
+    private Object stripeFor(long movieId) {
+        return writeStripes[(int) Math.floorMod(movieId ^ (movieId >>> 32), (long) WRITE_STRIPES)];
+    }
+
+    /**
+     * Registers a listener and immediately reports every movie's existing reviews to it.
+     * Meant to be called during startup, before reviews are being submitted.
+     */
+    public void addReviewListener(ReviewListener listener) {
+        if (store != null) {
+            store.forEachMovieRatings(listener::reviewsAdded);
+        }
+        for (Map.Entry<Long, LoggedReviews> entry : logged.entrySet()) {
+            listener.reviewsAdded(entry.getKey(), entry.getValue().count, entry.getValue().ratingSum);
+        }
+        reviewListeners.add(listener);
+    }
+
+    public ReviewCache.Stats getCacheStats() {
+        return cache.getStats();
+    }
+
+    /**
+     * Starts the cache hit, miss and eviction counts afresh, e.g. once warm-up traffic is over.
+     */
+    public void resetCacheStats() {
+        cache.resetStats();
+    }
+
+    @PreDestroy
+    public void close() {
+        try {
+            if (reviewLog != null) {
+                reviewLog.close();
+            }
+            if (store != null) {
+                store.close();
+            }
+        } catch (Exception e) {
+            logger.error("Failed to close review storage: {}", e.getMessage());
         }
-        return reviews;
     }
 }
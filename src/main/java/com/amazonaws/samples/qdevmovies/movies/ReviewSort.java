@@ -0,0 +1,40 @@
+package com.amazonaws.samples.qdevmovies.movies;
+
+/**
+ * Orderings offered by the reviews API. Every ordering ends with the review's sequence
+ * number (newest first), so it is total and a (rating, sequence) pair is a stable cursor.
+ */
+public enum ReviewSort {
+    NEWEST {
+        @Override
+        int compare(double ratingA, int sequenceA, double ratingB, int sequenceB) {
+            return Integer.compare(sequenceB, sequenceA);
+        }
+    },
+    HIGHEST {
+        @Override
+        int compare(double ratingA, int sequenceA, double ratingB, int sequenceB) {
+            int byRating = Double.compare(ratingB, ratingA);
+            return byRating != 0 ? byRating : Integer.compare(sequenceB, sequenceA);
+        }
+    },
+    LOWEST {
+        @Override
+        int compare(double ratingA, int sequenceA, double ratingB, int sequenceB) {
+            int byRating = Double.compare(ratingA, ratingB);
+            return byRating != 0 ? byRating : Integer.compare(sequenceB, sequenceA);
+        }
+    };
+
+    abstract int compare(double ratingA, int sequenceA, double ratingB, int sequenceB);
+
+    /**
+     * @throws IllegalArgumentException if the value is not a known ordering
+     */
+    public static ReviewSort fromParam(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return NEWEST;
+        }
+        return valueOf(value.trim().toUpperCase());
+    }
+}
@@ -0,0 +1,149 @@
+package com.amazonaws.samples.qdevmovies.movies;
+
+import org.json.JSONArray;
+import org.json.JSONTokener;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Review data on local disk with an in-memory offset index. Each movie's reviews are stored
+ * as one JSON array segment; the heap only holds the (offset, length) of every segment, so
+ * reviews for movies nobody is looking at cost nothing until they are read.
+ */
+public class ReviewStore implements Closeable {
+    private final Map<Long, Segment> segments;
+    private final FileChannel channel;
+
+    /**
+     * Where a movie's reviews are in the data file, with the count and rating sum of those
+     * reviews so aggregates never need to read them back.
+     */
+    private static class Segment {
+        final long position;
+        final int length;
+        final int reviewCount;
+        final double ratingSum;
+
+        Segment(long position, int length, int reviewCount, double ratingSum) {
+            this.position = position;
+            this.length = length;
+            this.reviewCount = reviewCount;
+            this.ratingSum = ratingSum;
+        }
+    }
+
+    /**
+     * Receives the review count and rating sum of one movie.
+     */
+    public interface RatingsConsumer {
+        void accept(long movieId, int reviewCount, double ratingSum);
+    }
+
+    private ReviewStore(Map<Long, Segment> segments, FileChannel channel) {
+        this.segments = segments;
+        this.channel = channel;
+    }
+
+    /**
+     * Streams a reviews JSON object keyed by movie id into an indexed data file. Only one
+     * movie's reviews are held in memory at a time while building.
+     */
+    public static ReviewStore build(InputStream json, Path dataFile) throws IOException {
+        Map<Long, Segment> segments = new HashMap<>();
+        long position = 0;
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(dataFile))) {
+            JSONTokener tokener = new JSONTokener(new InputStreamReader(json, StandardCharsets.UTF_8));
+            if (tokener.nextClean() != '{') {
+                throw new IOException("Reviews JSON must be an object keyed by movie id");
+            }
+            if (tokener.nextClean() != '}') {
+                tokener.back();
+                while (true) {
+                    long movieId = Long.parseLong(tokener.nextValue().toString());
+                    if (tokener.nextClean() != ':') {
+                        throw new IOException("Expected ':' after movie id " + movieId);
+                    }
+                    JSONArray reviews = (JSONArray) tokener.nextValue();
+                    position += writeSegment(out, segments, movieId, reviews, position);
+
+                    char next = tokener.nextClean();
+                    if (next == '}') {
+                        break;
+                    }
+                    if (next != ',') {
+                        throw new IOException("Expected ',' or '}' after reviews of movie " + movieId);
+                    }
+                }
+            }
+        }
+        return new ReviewStore(segments, FileChannel.open(dataFile, StandardOpenOption.READ));
+    }
+
+    private static int writeSegment(OutputStream out, Map<Long, Segment> segments, long movieId,
+                                    JSONArray reviews, long position) throws IOException {
+        byte[] segment = reviews.toString().getBytes(StandardCharsets.UTF_8);
+        out.write(segment);
+        double ratingSum = 0;
+        for (int i = 0; i < reviews.length(); i++) {
+            ratingSum += reviews.getJSONObject(i).getDouble("rating");
+        }
+        segments.put(movieId, new Segment(position, segment.length, reviews.length(), ratingSum));
+        return segment.length;
+    }
+
+    public boolean contains(long movieId) {
+        return segments.containsKey(movieId);
+    }
+
+    public int movieCount() {
+        return segments.size();
+    }
+
+    /**
+     * Reports the review count and rating sum of every stored movie, from the index alone.
+     */
+    public void forEachMovieRatings(RatingsConsumer consumer) {
+        for (Map.Entry<Long, Segment> entry : segments.entrySet()) {
+            consumer.accept(entry.getKey(), entry.getValue().reviewCount, entry.getValue().ratingSum);
+        }
+    }
+
+    /**
+     * Reads one movie's reviews segment from disk.
+     *
+     * @return the JSON array text, or null if the movie has no reviews
+     */
+    public String readSegment(long movieId) throws IOException {
+        Segment segment = segments.get(movieId);
+        if (segment == null) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(segment.length);
+        long position = segment.position;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Review data file truncated at movie " + movieId);
+            }
+        }
+        return new String(buffer.array(), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,49 @@
+package com.amazonaws.samples.qdevmovies.movies;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The access paths {@link MovieService} chose for a search, in evaluation order, together
+ * with the number of candidate movies left after each step. Returned by the search API
+ * when called with {@code explain=true}.
+ */
+public class SearchPlan {
+
+    public static class Step {
+        private final String predicate;
+        private final String accessPath;
+        private final int candidates;
+
+        public Step(String predicate, String accessPath, int candidates) {
+            this.predicate = predicate;
+            this.accessPath = accessPath;
+            this.candidates = candidates;
+        }
+
+        public String getPredicate() { return predicate; }
+        public String getAccessPath() { return accessPath; }
+        public int getCandidates() { return candidates; }
+    }
+
+    private final int catalogSize;
+    private final List<Step> steps = new ArrayList<>();
+    private List<Movie> results = new ArrayList<>();
+
+    public SearchPlan(int catalogSize) {
+        this.catalogSize = catalogSize;
+    }
+
+    void addStep(String predicate, String accessPath, int candidates) {
+        steps.add(new Step(predicate, accessPath, candidates));
+    }
+
+    void setResults(List<Movie> results) {
+        this.results = results;
+    }
+
+    public int getCatalogSize() { return catalogSize; }
+    public List<Step> getSteps() { return steps; }
+    public int getResultCount() { return results.size(); }
+    public List<Movie> getResults() { return results; }
+}
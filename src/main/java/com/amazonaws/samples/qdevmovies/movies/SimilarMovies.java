@@ -0,0 +1,283 @@
+package com.amazonaws.samples.qdevmovies.movies;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Precomputed nearest neighbours of every movie, by genre tokens, director, year and rating.
+ * Scoring every pair would be quadratic in the catalog size, so neighbours are approximate:
+ * each movie is only compared with the movies closest to it in year within each bucket it
+ * belongs to (one per genre token, one for its director and one for the whole catalog),
+ * a fixed number of candidates per movie no matter how large the catalog grows.
+ * <p>
+ * The neighbour lists are kept as one table of fixed-size rows sorted by movie id, the same
+ * bytes a {@link MovieSnapshot} stores, so a snapshot's table is read from the mapped file.
+ * Each row is the movie id, its neighbour count and {@link #NEIGHBOURS} neighbour ids,
+ * after a leading row count, all big-endian.
+ */
+public class SimilarMovies {
+    static final int NEIGHBOURS = 6;
+    static final int WINDOW = 8;
+    static final double GENRE_WEIGHT = 0.5;
+    static final double DIRECTOR_WEIGHT = 0.2;
+    static final double YEAR_WEIGHT = 0.15;
+    static final double RATING_WEIGHT = 0.15;
+    static final double YEAR_SCALE = 20.0;
+    static final double RATING_SCALE = 2.0;
+    static final int ROW_BYTES = 12 + 8 * NEIGHBOURS;
+
+    private static final int NO_DIRECTOR = -1;
+    private static final long[] NONE = new long[0];
+
+    private final ByteBuffer table;
+    private final int rowCount;
+
+    /**
+     * Reads neighbour lists from their encoded table, as written by {@link #encode}.
+     */
+    SimilarMovies(ByteBuffer table) {
+        this.table = table;
+        this.rowCount = table.getInt(0);
+    }
+
+    /**
+     * Builds the neighbour lists, scoring movies in parallel on {@code scan}'s pool.
+     */
+    public static SimilarMovies build(List<Movie> movies, CatalogScan scan) {
+        return new SimilarMovies(ByteBuffer.wrap(encode(movies, scan)));
+    }
+
+    /**
+     * Builds the neighbour lists of a catalog and encodes them as the table described above.
+     */
+    static byte[] encode(List<Movie> movies, CatalogScan scan) {
+        int size = movies.size();
+        long[] ids = new long[size];
+        int[] years = new int[size];
+        double[] ratings = new double[size];
+        int[] directors = new int[size];
+        int[][] genres = new int[size][];
+        Map<String, Integer> directorIds = new HashMap<>();
+        Map<String, Integer> genreIds = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            Movie movie = movies.get(i);
+            ids[i] = movie.getId();
+            years[i] = movie.getYear();
+            ratings[i] = movie.getImdbRating();
+            String director = MovieSearchIndex.normalize(movie.getDirector());
+            directors[i] = director.isEmpty() ? NO_DIRECTOR : intern(directorIds, director);
+            String[] tokens = MovieSearchIndex.normalize(movie.getGenre()).split("/");
+            int[] tokenIds = new int[tokens.length];
+            int count = 0;
+            for (String token : tokens) {
+                if (!token.trim().isEmpty()) {
+                    tokenIds[count++] = intern(genreIds, token.trim());
+                }
+            }
+            genres[i] = Arrays.stream(tokenIds, 0, count).distinct().sorted().toArray();
+        }
+
+        // Buckets hold catalog positions sorted by year, so a movie's nearest years are a window around it
+        int[][] genreBuckets = buckets(genres, genreIds.size(), years);
+        int[][] directorBuckets = buckets(singletons(directors), directorIds.size(), years);
+        int[] everything = buckets(singletons(new int[size]), 1, years)[0];
+
+        long[][] byPosition = new long[size][];
+        scan.forEachIndex(size, i -> {
+            Neighbours best = new Neighbours(i);
+            for (int genre : genres[i]) {
+                best.consider(genreBuckets[genre], years, ratings, directors, genres);
+            }
+            if (directors[i] != NO_DIRECTOR) {
+                best.consider(directorBuckets[directors[i]], years, ratings, directors, genres);
+            }
+            best.consider(everything, years, ratings, directors, genres);
+            byPosition[i] = best.ids(ids);
+        });
+
+        Integer[] byId = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            byId[i] = i;
+        }
+        Arrays.sort(byId, (a, b) -> Long.compare(ids[a], ids[b]));
+        ByteBuffer table = ByteBuffer.allocate(4 + size * ROW_BYTES);
+        table.putInt(size);
+        for (int i : byId) {
+            table.putLong(ids[i]).putInt(byPosition[i].length);
+            for (int k = 0; k < NEIGHBOURS; k++) {
+                table.putLong(k < byPosition[i].length ? byPosition[i][k] : 0L);
+            }
+        }
+        return table.array();
+    }
+
+    /**
+     * @return ids of the movies most similar to {@code movieId}, most similar first; empty
+     *         for an unknown movie
+     */
+    public long[] neighboursOf(long movieId) {
+        int low = 0;
+        int high = rowCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int row = 4 + mid * ROW_BYTES;
+            long midId = table.getLong(row);
+            if (midId < movieId) {
+                low = mid + 1;
+            } else if (midId > movieId) {
+                high = mid - 1;
+            } else {
+                long[] neighbours = new long[table.getInt(row + 8)];
+                for (int k = 0; k < neighbours.length; k++) {
+                    neighbours[k] = table.getLong(row + 12 + k * 8);
+                }
+                return neighbours;
+            }
+        }
+        return NONE;
+    }
+
+    static double score(int a, int b, int[] years, double[] ratings, int[] directors, int[][] genres) {
+        double genre = jaccard(genres[a], genres[b]);
+        double director = directors[a] != NO_DIRECTOR && directors[a] == directors[b] ? 1.0 : 0.0;
+        double year = Math.max(0.0, 1.0 - Math.abs(years[a] - years[b]) / YEAR_SCALE);
+        double rating = Math.max(0.0, 1.0 - Math.abs(ratings[a] - ratings[b]) / RATING_SCALE);
+        return GENRE_WEIGHT * genre + DIRECTOR_WEIGHT * director + YEAR_WEIGHT * year + RATING_WEIGHT * rating;
+    }
+
+    private static double jaccard(int[] a, int[] b) {
+        if (a.length == 0 && b.length == 0) {
+            return 0.0;
+        }
+        int shared = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            if (a[i] == b[j]) {
+                shared++;
+                i++;
+                j++;
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return (double) shared / (a.length + b.length - shared);
+    }
+
+    /**
+     * Top {@link #NEIGHBOURS} candidates of one movie, kept sorted by descending score.
+     */
+    private static class Neighbours {
+        final int self;
+        final int[] positions = new int[NEIGHBOURS];
+        final double[] scores = new double[NEIGHBOURS];
+        int count;
+
+        Neighbours(int self) {
+            this.self = self;
+        }
+
+        void consider(int[] bucket, int[] years, double[] ratings, int[] directors, int[][] genres) {
+            int at = indexOf(bucket, years, self);
+            int from = Math.max(0, at - WINDOW);
+            int to = Math.min(bucket.length, at + WINDOW + 1);
+            for (int k = from; k < to; k++) {
+                int candidate = bucket[k];
+                if (candidate != self) {
+                    offer(candidate, score(self, candidate, years, ratings, directors, genres));
+                }
+            }
+        }
+
+        void offer(int candidate, double score) {
+            for (int k = 0; k < count; k++) {
+                if (positions[k] == candidate) {
+                    return;
+                }
+            }
+            if (count == NEIGHBOURS && !(score > scores[count - 1])) {
+                return;
+            }
+            int k = count < NEIGHBOURS ? count++ : count - 1;
+            while (k > 0 && scores[k - 1] < score) {
+                positions[k] = positions[k - 1];
+                scores[k] = scores[k - 1];
+                k--;
+            }
+            positions[k] = candidate;
+            scores[k] = score;
+        }
+
+        long[] ids(long[] ids) {
+            long[] result = new long[count];
+            for (int k = 0; k < count; k++) {
+                result[k] = ids[positions[k]];
+            }
+            return result;
+        }
+    }
+
+    private static int compareByYear(int a, int b, int[] years) {
+        return years[a] != years[b] ? Integer.compare(years[a], years[b]) : Integer.compare(a, b);
+    }
+
+    /**
+     * Index of {@code position} in a bucket it belongs to.
+     */
+    private static int indexOf(int[] bucket, int[] years, int position) {
+        int low = 0;
+        int high = bucket.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareByYear(bucket[mid], position, years) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int[][] buckets(int[][] keysByPosition, int keyCount, int[] years) {
+        List<List<Integer>> members = new ArrayList<>(keyCount);
+        for (int k = 0; k < keyCount; k++) {
+            members.add(new ArrayList<>());
+        }
+        for (int i = 0; i < keysByPosition.length; i++) {
+            for (int key : keysByPosition[i]) {
+                if (key >= 0) {
+                    members.get(key).add(i);
+                }
+            }
+        }
+        int[][] buckets = new int[keyCount][];
+        for (int k = 0; k < keyCount; k++) {
+            List<Integer> bucket = members.get(k);
+            Collections.sort(bucket, (a, b) -> compareByYear(a, b, years));
+            buckets[k] = bucket.stream().mapToInt(Integer::intValue).toArray();
+        }
+        return buckets;
+    }
+
+    private static int[][] singletons(int[] keys) {
+        int[][] result = new int[keys.length][];
+        for (int i = 0; i < keys.length; i++) {
+            result[i] = new int[] {keys[i]};
+        }
+        return result;
+    }
+
+    private static int intern(Map<String, Integer> ids, String key) {
+        Integer id = ids.get(key);
+        if (id == null) {
+            id = ids.size();
+            ids.put(key, id);
+        }
+        return id;
+    }
+}
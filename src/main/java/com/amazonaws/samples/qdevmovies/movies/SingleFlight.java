@@ -0,0 +1,79 @@
+package com.amazonaws.samples.qdevmovies.movies;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls for the same key into one computation. The first caller runs
+ * it; callers arriving while it is in flight wait for and share its result or exception.
+ * Nothing is kept once the computation finishes, so a later call always computes afresh.
+ */
+public class SingleFlight<K, V> {
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong executions = new AtomicLong();
+
+    public static class Stats {
+        private final long calls;
+        private final long executions;
+        private final int inFlight;
+
+        Stats(long calls, long executions, int inFlight) {
+            this.calls = calls;
+            this.executions = executions;
+            this.inFlight = inFlight;
+        }
+
+        public long getCalls() { return calls; }
+        public long getExecutions() { return executions; }
+        public long getCoalesced() { return calls - executions; }
+        public int getInFlight() { return inFlight; }
+        /** Share of calls that were served by another caller's computation. */
+        public double getCoalescingRatio() { return calls == 0 ? 0.0 : (double) (calls - executions) / calls; }
+    }
+
+    /**
+     * @return the result of {@code computation}, run by this caller or by a concurrent caller with an equal key
+     */
+    public V execute(K key, Supplier<V> computation) {
+        calls.incrementAndGet();
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+
+        executions.incrementAndGet();
+        try {
+            V result = computation.get();
+            flight.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    public Stats getStats() {
+        return new Stats(calls.get(), executions.get(), inFlight.size());
+    }
+
+    /**
+     * Zeroes the call and execution counts. Calls in flight meanwhile may be counted on
+     * either side of the reset.
+     */
+    public void resetStats() {
+        executions.set(0);
+        calls.set(0);
+    }
+}
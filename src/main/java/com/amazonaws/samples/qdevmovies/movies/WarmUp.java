@@ -0,0 +1,236 @@
+package com.amazonaws.samples.qdevmovies.movies;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.ApplicationContext;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Sends synthetic requests through the running server before the application reports
+ * ready, so search, reviews, JSON serialization and page rendering are JIT-compiled before
+ * real traffic arrives. Spring Boot only switches readiness to accepting traffic once
+ * application runners have finished, so the warm-up holds readiness back until its time or
+ * request budget runs out. The latency of the first real requests afterwards is recorded
+ * so runs with and without warm-up can be compared.
+ */
+@Component
+public class WarmUp implements ApplicationRunner {
+    private static final Logger logger = LogManager.getLogger(WarmUp.class);
+    static final int FIRST_REQUESTS = 100;
+    static final int MAX_WARMUP_MOVIES = 50;
+    private static final int TIMEOUT_MILLIS = 10_000;
+
+    private final MovieService movieService;
+    private final ReviewService reviewService;
+    private final ApplicationContext context;
+    private final Environment environment;
+    private final boolean enabled;
+    private final long maxMillis;
+    private final int maxRequests;
+
+    private volatile String state = "pending";
+    private volatile int requests;
+    private volatile long durationMillis;
+    private volatile String stoppedBy;
+    private final AtomicInteger firstRequestCount = new AtomicInteger();
+    private final AtomicLongArray firstRequestNanos = new AtomicLongArray(FIRST_REQUESTS);
+
+    public static class Stats {
+        private final String state;
+        private final int requests;
+        private final long durationMillis;
+        private final String stoppedBy;
+        private final long[] firstRequestNanos;
+
+        Stats(String state, int requests, long durationMillis, String stoppedBy, long[] firstRequestNanos) {
+            this.state = state;
+            this.requests = requests;
+            this.durationMillis = durationMillis;
+            this.stoppedBy = stoppedBy;
+            this.firstRequestNanos = firstRequestNanos;
+        }
+
+        public String getState() { return state; }
+        public int getRequests() { return requests; }
+        public long getDurationMillis() { return durationMillis; }
+        /** Budget that ended the warm-up: "time" or "requests", null if it did not run to the end. */
+        public String getStoppedBy() { return stoppedBy; }
+        /** Number of real requests measured after startup, up to {@link #FIRST_REQUESTS}. */
+        public int getFirstRequests() { return firstRequestNanos.length; }
+        public double getFirstRequestMillis() { return firstRequestNanos.length == 0 ? 0.0 : firstRequestNanos[0] / 1e6; }
+        public double getFirstRequestsP50Millis() { return percentile(0.50); }
+        public double getFirstRequestsP99Millis() { return percentile(0.99); }
+        public double getFirstRequestsMaxMillis() { return percentile(1.0); }
+
+        private double percentile(double fraction) {
+            if (firstRequestNanos.length == 0) {
+                return 0.0;
+            }
+            long[] sorted = firstRequestNanos.clone();
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(fraction * sorted.length) - 1;
+            return sorted[Math.max(0, index)] / 1e6;
+        }
+    }
+
+    /**
+     * @param enabled Whether to warm up before reporting ready
+     * @param maxMillis Time budget for the warm-up
+     * @param maxRequests Request budget for the warm-up
+     */
+    @Autowired
+    public WarmUp(MovieService movieService, ReviewService reviewService, ApplicationContext context, Environment environment,
+                  @Value("${warmup.enabled:true}") boolean enabled,
+                  @Value("${warmup.max-millis:20000}") long maxMillis,
+                  @Value("${warmup.max-requests:3000}") int maxRequests) {
+        this.movieService = movieService;
+        this.reviewService = reviewService;
+        this.context = context;
+        this.environment = environment;
+        this.enabled = enabled;
+        this.maxMillis = maxMillis;
+        this.maxRequests = maxRequests;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        Integer port = enabled ? environment.getProperty("local.server.port", Integer.class) : null;
+        if (port == null || maxRequests <= 0) {
+            state = "skipped";
+            return;
+        }
+        AvailabilityChangeEvent.publish(context, ReadinessState.REFUSING_TRAFFIC);
+        state = "running";
+        List<String> paths = warmUpPaths(movieService.getAllMovies());
+        logger.info("Hoisting the sails: warming up with up to {} requests or {} ms", maxRequests, maxMillis);
+
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(maxMillis);
+        int sent = 0;
+        try {
+            while (sent < maxRequests && System.nanoTime() - deadline < 0) {
+                get(port, paths.get(sent % paths.size()));
+                sent++;
+            }
+            stoppedBy = sent < maxRequests ? "time" : "requests";
+            state = "complete";
+        } catch (IOException e) {
+            logger.warn("Warm-up request failed after {} requests, reporting ready anyway: {}", sent, e.getMessage());
+            state = "failed";
+        }
+        // Cache and coalescing metrics should describe real traffic only
+        movieService.resetSearchCoalescingStats();
+        reviewService.resetCacheStats();
+        requests = sent;
+        durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        logger.info("Warm-up {} after {} requests in {} ms", state, sent, durationMillis);
+    }
+
+    /**
+     * The request mix, cycled through until a budget runs out: name, genre, director, id and
+     * full-text searches, the movie list and details pages, review pages and similar movies,
+     * spread over the first movies of the catalog.
+     */
+    static List<String> warmUpPaths(List<Movie> movies) {
+        List<String> paths = new ArrayList<>();
+        paths.add("/movies");
+        paths.add("/movies/search");
+        paths.add("/movies/statistics");
+        for (Movie movie : movies.subList(0, Math.min(movies.size(), MAX_WARMUP_MOVIES))) {
+            String genre = movie.getGenre().split("/")[0];
+            String[] director = movie.getDirector().split(" ");
+            paths.add("/movies/search?name=" + encode(longestWord(movie.getMovieName())));
+            paths.add("/movies/search?name=" + encode(longestWord(movie.getMovieName()).substring(0, 2)));
+            paths.add("/movies/search?genre=" + encode(genre) + "&director=" + encode(director[director.length - 1]));
+            paths.add("/movies/search?id=" + movie.getId());
+            paths.add("/movies/search?q=" + encode(longestWord(movie.getDescription())) + "&limit=10");
+            paths.add("/movies?genre=" + encode(genre));
+            paths.add("/movies/" + movie.getId() + "/details");
+            paths.add("/movies/" + movie.getId() + "/reviews?sort=highest&limit=20");
+            paths.add("/movies/" + movie.getId() + "/similar");
+        }
+        return paths;
+    }
+
+    private static String longestWord(String text) {
+        String longest = "";
+        for (String word : text.split("[^\\p{L}\\p{N}]+")) {
+            if (word.length() > longest.length()) {
+                longest = word;
+            }
+        }
+        return longest.length() >= 2 ? longest : "the";
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void get(int port, String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + path).openConnection();
+        connection.setConnectTimeout(TIMEOUT_MILLIS);
+        connection.setReadTimeout(TIMEOUT_MILLIS);
+        int status = connection.getResponseCode();
+        try (InputStream body = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            if (body != null) {
+                byte[] buffer = new byte[8192];
+                while (body.read(buffer) >= 0) {
+                    // Drain so the connection is reused
+                }
+            }
+        }
+    }
+
+    /**
+     * @return whether warm-up requests are being sent right now
+     */
+    public boolean isRunning() {
+        return "running".equals(state);
+    }
+
+    /**
+     * Records the latency of a real request served after startup; only the first
+     * {@link #FIRST_REQUESTS} are kept.
+     */
+    public void recordRequest(long latencyNanos) {
+        if (firstRequestCount.get() >= FIRST_REQUESTS) {
+            return;
+        }
+        int index = firstRequestCount.getAndIncrement();
+        if (index < FIRST_REQUESTS) {
+            firstRequestNanos.set(index, latencyNanos);
+        }
+    }
+
+    public Stats getStats() {
+        long[] first = new long[Math.min(FIRST_REQUESTS, firstRequestCount.get())];
+        for (int i = 0; i < first.length; i++) {
+            first[i] = firstRequestNanos.get(i);
+        }
+        return new Stats(state, requests, durationMillis, stoppedBy, first);
+    }
+}
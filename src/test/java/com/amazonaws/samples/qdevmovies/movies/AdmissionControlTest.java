@@ -0,0 +1,126 @@
+package com.amazonaws.samples.qdevmovies.movies;
+
+import com.amazonaws.samples.qdevmovies.movies.AdmissionControl.EndpointClass;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdmissionControlTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    public void testScansAreShedBeforeLookups() {
+        AdmissionControl admission = new AdmissionControl(20, 4, 100, clock::get);
+        List<AdmissionControl.Permit> permits = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            permits.add(admission.tryAcquire(EndpointClass.SCAN));
+        }
+        assertFalse(permits.contains(null));
+        assertNull(admission.tryAcquire(EndpointClass.SCAN));
+
+        for (int i = 0; i < 7; i++) {
+            assertNotNull(admission.tryAcquire(EndpointClass.SEARCH));
+        }
+        assertNull(admission.tryAcquire(EndpointClass.SEARCH));
+
+        for (int i = 0; i < 8; i++) {
+            assertNotNull(admission.tryAcquire(EndpointClass.LOOKUP));
+        }
+        assertNull(admission.tryAcquire(EndpointClass.LOOKUP));
+
+        AdmissionControl.Stats stats = admission.getStats();
+        assertEquals(20, stats.getInFlight());
+        assertEquals(1, stats.getClasses().get("scan").getShed());
+        assertEquals(5, stats.getClasses().get("scan").getLimit());
+        assertEquals(8, stats.getClasses().get("lookup").getAdmitted());
+
+        permits.get(0).release();
+        assertEquals(19, admission.getStats().getInFlight());
+        assertEquals(4, admission.getStats().getClasses().get("scan").getInFlight());
+    }
+
+    @Test
+    public void testSlowRequestsBackOffOncePerOverload() {
+        AdmissionControl admission = new AdmissionControl(50, 8, 100, clock::get);
+        AdmissionControl.Permit first = admission.tryAcquire(EndpointClass.LOOKUP);
+        AdmissionControl.Permit second = admission.tryAcquire(EndpointClass.LOOKUP);
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+
+        first.release();
+        assertEquals(50 * AdmissionControl.BACKOFF, admission.getStats().getLimit(), 1e-9);
+        second.release();
+        assertEquals(50 * AdmissionControl.BACKOFF, admission.getStats().getLimit(), 1e-9);
+
+        AdmissionControl.Permit third = admission.tryAcquire(EndpointClass.LOOKUP);
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        third.release();
+        assertEquals(50 * AdmissionControl.BACKOFF * AdmissionControl.BACKOFF, admission.getStats().getLimit(), 1e-9);
+    }
+
+    @Test
+    public void testLimitNeverBacksOffBelowMinimum() {
+        AdmissionControl admission = new AdmissionControl(10, 8, 100, clock::get);
+        for (int i = 0; i < 10; i++) {
+            AdmissionControl.Permit permit = admission.tryAcquire(EndpointClass.SCAN);
+            clock.addAndGet(TimeUnit.SECONDS.toNanos(2));
+            permit.release();
+        }
+        assertEquals(8.0, admission.getStats().getLimit(), 1e-9);
+        assertEquals(2, admission.getStats().getClasses().get("scan").getLimit());
+    }
+
+    @Test
+    public void testFastRequestsGrowLimitOnlyWhenItIsUsed() {
+        AdmissionControl admission = new AdmissionControl(10, 8, 100, clock::get);
+        AdmissionControl.Permit alone = admission.tryAcquire(EndpointClass.LOOKUP);
+        alone.release();
+        assertEquals(10.0, admission.getStats().getLimit(), 1e-9);
+
+        List<AdmissionControl.Permit> permits = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            permits.add(admission.tryAcquire(EndpointClass.LOOKUP));
+        }
+        for (AdmissionControl.Permit permit : permits) {
+            permit.release();
+        }
+        double limit = admission.getStats().getLimit();
+        assertTrue(limit > 10.0 && limit < 11.0, "limit grows by about one per round: " + limit);
+    }
+
+    @Test
+    public void testClassify() {
+        Map<String, String> params = new HashMap<>();
+        assertEquals(EndpointClass.SCAN, AdmissionFilter.classify("GET", "/movies", params::get));
+        assertEquals(EndpointClass.SCAN, AdmissionFilter.classify("GET", "/movies/search", params::get));
+        assertEquals(EndpointClass.LOOKUP, AdmissionFilter.classify("GET", "/movies/5/details", params::get));
+        assertEquals(EndpointClass.LOOKUP, AdmissionFilter.classify("GET", "/movies/5/reviews", params::get));
+        assertNull(AdmissionFilter.classify("POST", "/movies/5/reviews", params::get));
+        assertNull(AdmissionFilter.classify("GET", "/metrics/admission", params::get));
+
+        params.put("genre", "Drama");
+        assertEquals(EndpointClass.SEARCH, AdmissionFilter.classify("GET", "/movies/search", params::get));
+        params.put("id", "5");
+        assertEquals(EndpointClass.LOOKUP, AdmissionFilter.classify("GET", "/movies/search", params::get));
+        params.put("id", "-1");
+        assertEquals(EndpointClass.SEARCH, AdmissionFilter.classify("GET", "/movies", params::get));
+        params.clear();
+        params.put("id", "abc");
+        assertEquals(EndpointClass.SCAN, AdmissionFilter.classify("GET", "/movies/search", params::get));
+        params.put("q", "prison");
+        assertEquals(EndpointClass.SEARCH, AdmissionFilter.classify("GET", "/movies/search", params::get));
+    }
+
+    @Test
+    public void testInvalidLimitsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new AdmissionControl(10, 0, 100));
+        assertThrows(IllegalArgumentException.class, () -> new AdmissionControl(10, 50, 20));
+    }
+}
@@ -0,0 +1,118 @@
+package com.amazonaws.samples.qdevmovies.movies;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Measures MovieService startup time and retained heap for a synthetic catalog loaded from
+ * JSON versus from a binary snapshot, and the cost of a pass over every movie as the
+ * movies page makes, first and repeated. A snapshot start touches none of the rows, so its
+ * first pass also pays for faulting the mapped pages in. Not part of the test suite; run each mode in a fresh JVM with
+ * {@code java -cp <test classpath> com.amazonaws.samples.qdevmovies.movies.CatalogLoadBenchmark [movies] json|snapshot}.
+ * The first snapshot run writes the snapshot, so time the second one.
+ */
+public class CatalogLoadBenchmark {
+    private static final String[] GENRES = {"Drama", "Crime/Drama", "Action/Crime", "Adventure/Fantasy",
+        "Sci-Fi/Action", "Comedy", "Horror", "Animation/Family"};
+
+    public static void main(String[] args) throws IOException {
+        int movieCount = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        boolean fromSnapshot = args.length > 1 && args[1].equals("snapshot");
+        Path directory = Paths.get(System.getProperty("java.io.tmpdir"));
+        Path catalog = directory.resolve("catalog-load-" + movieCount + ".json");
+        Path snapshot = directory.resolve("catalog-load-" + movieCount + ".snapshot");
+        if (!Files.exists(catalog)) {
+            writeCatalog(catalog, movieCount);
+        }
+        boolean snapshotExisted = Files.exists(snapshot);
+
+        // The movie list alone, before the service builds its indexes over it
+        long heapBefore = usedHeap();
+        long start = System.nanoTime();
+        List<Movie> movies = fromSnapshot && snapshotExisted ? MovieSnapshot.open(snapshot) : parse(catalog);
+        double loadMillis = (System.nanoTime() - start) / 1e6;
+        long listRetained = usedHeap() - heapBefore;
+        System.out.printf("catalog only: load %.0f ms, retained heap %.1f MB (%d movies)%n",
+            loadMillis, listRetained / 1048576.0, movies.size());
+        movies = null;
+
+        heapBefore = usedHeap();
+        start = System.nanoTime();
+        MovieService service = new MovieService(catalog.toString(), fromSnapshot ? snapshot.toString() : "", 1);
+        double startupMillis = (System.nanoTime() - start) / 1e6;
+        long retained = usedHeap() - heapBefore;
+
+        long checksum = 0;
+        double[] listMillis = new double[2];
+        for (int pass = 0; pass < listMillis.length; pass++) {
+            start = System.nanoTime();
+            checksum += listPass(service.getAllMovies());
+            listMillis[pass] = (System.nanoTime() - start) / 1e6;
+        }
+
+        System.out.printf("%d movies from %s%s: startup %.0f ms, retained heap %.1f MB, list pass %.1f ms first, %.1f ms again (%d)%n",
+            service.getAllMovies().size(), fromSnapshot ? "snapshot" : "json",
+            fromSnapshot && !snapshotExisted ? " (written this run)" : "",
+            startupMillis, retained / 1048576.0, listMillis[0], listMillis[1], checksum);
+        service.close();
+    }
+
+    private static long listPass(List<Movie> movies) {
+        long checksum = 0;
+        for (Movie movie : movies) {
+            checksum += movie.getMovieName().length() + movie.getDirector().length() + movie.getGenre().length();
+        }
+        return checksum;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static List<Movie> parse(Path catalog) throws IOException {
+        JSONArray array = new JSONArray(new String(Files.readAllBytes(catalog), StandardCharsets.UTF_8));
+        List<Movie> movies = new ArrayList<>(array.length());
+        for (int i = 0; i < array.length(); i++) {
+            JSONObject movie = array.getJSONObject(i);
+            movies.add(new Movie(movie.getLong("id"), movie.getString("movieName"), movie.getString("director"),
+                movie.getInt("year"), movie.getString("genre"), movie.getString("description"),
+                movie.getInt("duration"), movie.getDouble("imdbRating")));
+        }
+        return movies;
+    }
+
+    private static void writeCatalog(Path path, int movieCount) throws IOException {
+        Random random = new Random(42);
+        try (Writer out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            out.write('[');
+            for (int i = 1; i <= movieCount; i++) {
+                StringBuilder description = new StringBuilder();
+                int words = 10 + random.nextInt(30);
+                for (int w = 0; w < words; w++) {
+                    description.append('w').append(random.nextInt(50_000)).append(' ');
+                }
+                out.write(String.format(Locale.ROOT, "%s{\"id\":%d,\"movieName\":\"Movie %d\",\"director\":\"Director %d\","
+                        + "\"year\":%d,\"genre\":\"%s\",\"description\":\"%s\",\"duration\":%d,\"imdbRating\":%.1f}",
+                    i > 1 ? "," : "", i, i, random.nextInt(5000), 1950 + random.nextInt(75),
+                    GENRES[random.nextInt(GENRES.length)], description.toString().trim(),
+                    80 + random.nextInt(100), 1 + random.nextInt(90) / 10.0));
+            }
+            out.write(']');
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.amazonaws.samples.qdevmovies.movies;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures a full title scan over a synthetic catalog with 1 to N scan threads. Not part of
+ * the test suite; run it with
+ * {@code java -cp <test classpath> com.amazonaws.samples.qdevmovies.movies.CatalogScanBenchmark [movies] [maxThreads]}.
+ */
+public class CatalogScanBenchmark {
+    private static final String[] WORDS = {"shawshank", "redemption", "godfather", "dark", "knight", "pulp",
+        "fiction", "forrest", "gump", "inception", "matrix", "goodfellas", "interstellar", "gladiator"};
+
+    public static void main(String[] args) {
+        int movieCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        List<Movie> movies = syntheticCatalog(movieCount);
+        BitSet candidates = new BitSet(movieCount);
+        candidates.set(0, movieCount);
+
+        System.out.printf("%d cores, %d movies%n%8s %8s %12s %10s%n", Runtime.getRuntime().availableProcessors(),
+            movieCount, "threads", "chunks", "ms/scan", "speedup");
+        double baseline = 0;
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            CatalogScan scan = new CatalogScan(threads);
+            int chunks = 0;
+            for (int i = 0; i < 5; i++) {
+                chunks = scan.filter(movies, candidates, movie -> movie.getMovieName().toLowerCase().contains("ar"), new ArrayList<>());
+            }
+            int rounds = 20;
+            long start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                scan.filter(movies, candidates, movie -> movie.getMovieName().toLowerCase().contains("ar"), new ArrayList<>());
+            }
+            double millis = (System.nanoTime() - start) / 1e6 / rounds;
+            scan.shutdown();
+            if (threads == 1) {
+                baseline = millis;
+            }
+            System.out.printf("%8d %8d %12.2f %9.2fx%n", threads, chunks, millis, baseline / millis);
+        }
+    }
+
+    private static List<Movie> syntheticCatalog(int count) {
+        Random random = new Random(42);
+        List<Movie> movies = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String title = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + i;
+            movies.add(new Movie(i + 1, title, "Director " + random.nextInt(5000), 1920 + random.nextInt(105),
+                "Drama", "Synthetic movie " + i, 90 + random.nextInt(90), 1 + random.nextInt(90) / 10.0));
+        }
+        return movies;
+    }
+}
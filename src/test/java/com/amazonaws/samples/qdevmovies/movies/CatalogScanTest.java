@@ -0,0 +1,67 @@
+package com.amazonaws.samples.qdevmovies.movies;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CatalogScanTest {
+
+    private static List<Integer> rows(int count) {
+        List<Integer> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            rows.add(i);
+        }
+        return rows;
+    }
+
+    private static BitSet all(int count) {
+        BitSet candidates = new BitSet(count);
+        candidates.set(0, count);
+        return candidates;
+    }
+
+    @Test
+    public void testLargeScanRunsInParallelAndKeepsOrder() {
+        CatalogScan scan = new CatalogScan(4);
+        List<Integer> rows = rows(200_000);
+        BitSet candidates = all(rows.size());
+        candidates.clear(150_000, 160_000);
+
+        List<Integer> sequential = new ArrayList<>();
+        new CatalogScan(1).filter(rows, candidates, row -> row % 7 == 0, sequential);
+        List<Integer> parallel = new ArrayList<>();
+        int chunks = scan.filter(rows, candidates, row -> row % 7 == 0, parallel);
+        scan.shutdown();
+
+        assertTrue(chunks > 1, "expected a parallel scan, got " + chunks + " chunk");
+        assertEquals(sequential, parallel);
+        assertFalse(parallel.contains(150_003));
+    }
+
+    @Test
+    public void testSmallScanStaysSequential() {
+        CatalogScan scan = new CatalogScan(4);
+        List<Integer> matches = new ArrayList<>();
+        assertEquals(1, scan.filter(rows(10), all(10), row -> row > 5, matches));
+        scan.shutdown();
+        assertEquals(4, matches.size());
+        assertEquals(6, (int) matches.get(0));
+    }
+
+    @Test
+    public void testPredicateExceptionPropagates() {
+        CatalogScan scan = new CatalogScan(2);
+        List<Integer> rows = rows(100_000);
+        assertThrows(IllegalStateException.class, () -> scan.filter(rows, all(rows.size()), row -> {
+            if (row == 99_999) {
+                throw new IllegalStateException("bad row");
+            }
+            return true;
+        }, new ArrayList<>()));
+        scan.shutdown();
+    }
+}
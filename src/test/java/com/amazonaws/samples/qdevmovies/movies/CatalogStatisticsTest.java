@@ -0,0 +1,82 @@
+package com.amazonaws.samples.qdevmovies.movies;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CatalogStatisticsTest {
+
+    private MovieService movieService;
+    private ReviewService reviewService;
+    private CatalogStatistics statistics;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        movieService = new MovieService();
+        reviewService = ReviewServiceTest.withTemporaryLog();
+        statistics = new CatalogStatistics(movieService, reviewService);
+    }
+
+    @Test
+    public void testWholeCatalog() {
+        CatalogStatistics.Stats stats = statistics.getStatistics(null, null, null);
+        assertEquals(12, stats.getMovieCount());
+        assertEquals(7, (long) stats.getGenres().get("Drama"));
+        assertEquals("Drama", stats.getGenres().keySet().iterator().next());
+        assertEquals(7, (long) stats.getDecades().get("1990s"));
+        assertEquals(10, (long) stats.getRatingHistogram().get("4.5-5.0"));
+        assertEquals(2, (long) stats.getRatingHistogram().get("4.0-4.5"));
+        assertEquals(2, stats.getTopDirectors().get(0).getMovies());
+        assertEquals("Chris Moviemaker", stats.getTopDirectors().get(0).getDirector());
+        assertTrue(stats.getReviewCount() > 0);
+        assertTrue(stats.getAverageReviewRating() > 0);
+    }
+
+    @Test
+    public void testGenreAndYearFilters() {
+        CatalogStatistics.Stats crime = statistics.getStatistics(" crime ", null, null);
+        assertEquals(4, crime.getMovieCount());
+        assertEquals("crime", crime.getGenre());
+
+        CatalogStatistics.Stats nineties = statistics.getStatistics("drama", 1990, 1999);
+        assertEquals(6, nineties.getMovieCount());
+        assertEquals(1, nineties.getDecades().size());
+
+        assertEquals(3, statistics.getStatistics(null, 1994, 1994).getMovieCount());
+        assertEquals(0, statistics.getStatistics("western", null, null).getMovieCount());
+        assertThrows(IllegalArgumentException.class, () -> statistics.getStatistics(null, 2000, 1990));
+    }
+
+    @Test
+    public void testCatalogChangesAreAppliedIncrementally() {
+        long reviewsBefore = statistics.getStatistics(null, null, null).getReviewCount();
+        List<Movie> updated = new ArrayList<>(movieService.getAllMovies());
+        Movie removed = updated.remove(0);
+        Movie changed = updated.remove(0);
+        updated.add(new Movie(changed.getId(), changed.getMovieName(), changed.getDirector(), 2021, "Western",
+            changed.getDescription(), 100, 3.0));
+        movieService.replaceCatalog(updated);
+
+        CatalogStatistics.Stats stats = statistics.getStatistics(null, null, null);
+        assertEquals(11, stats.getMovieCount());
+        assertEquals(1, (long) stats.getGenres().get("Western"));
+        assertEquals(1, (long) stats.getDecades().get("2020s"));
+        int removedReviews = reviewService.getReviewsForMovie(removed.getId()).size();
+        assertEquals(reviewsBefore - removedReviews, stats.getReviewCount());
+        assertEquals(reviewService.getReviewsForMovie(changed.getId()).size(),
+            statistics.getStatistics("western", null, null).getReviewCount());
+    }
+
+    @Test
+    public void testSubmittedReviewsAreCounted() {
+        CatalogStatistics.Stats before = statistics.getStatistics(null, 2010, null);
+        reviewService.submitReview(6L, "Critic", null, 1.0, "Not for me");
+        CatalogStatistics.Stats after = statistics.getStatistics(null, 2010, null);
+        assertEquals(before.getReviewCount() + 1, after.getReviewCount());
+        reviewService.close();
+    }
+}
@@ -3,8 +3,17 @@ package com.amazonaws.samples.qdevmovies.movies;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -241,4 +250,188 @@ public class MovieServiceTest {
         assertNotNull(results2);
         assertEquals(results1.size(), results2.size());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testSearchMoviesByDirector() {
+        List<Movie> results = movieService.searchMovies(null, null, null, "moviemaker");
+        assertEquals(4, results.size());
+        for (Movie movie : results) {
+            assertTrue(movie.getDirector().toLowerCase().contains("moviemaker"));
+        }
+    }
+
+    @Test
+    public void testSearchMoviesByDirectorAndGenre() {
+        List<Movie> results = movieService.searchMovies(null, null, "Sci-Fi", "Chris");
+        assertEquals(1, results.size());
+        assertEquals("Dream Heist", results.get(0).getMovieName());
+    }
+
+    @Test
+    public void testSearchMoviesPreservesCatalogOrder() {
+        List<Movie> results = movieService.searchMovies("the", null, "drama", null);
+        for (int i = 1; i < results.size(); i++) {
+            assertTrue(results.get(i - 1).getId() < results.get(i).getId());
+        }
+    }
+
+    @Test
+    public void testPlanSearchUsesIdLookup() {
+        SearchPlan plan = movieService.planSearch("Prison", 3L, "Drama", null);
+        assertEquals(1, plan.getSteps().size());
+        assertEquals("id-lookup", plan.getSteps().get(0).getAccessPath());
+        assertEquals(1, plan.getResultCount());
+    }
+
+    @Test
+    public void testPlanSearchStartsWithMostSelectivePredicate() {
+        SearchPlan plan = movieService.planSearch("Wars", null, "Sci-Fi", null);
+        List<SearchPlan.Step> steps = plan.getSteps();
+        assertEquals("title-trigram", steps.get(0).getAccessPath());
+        assertEquals(1, steps.get(0).getCandidates());
+        assertEquals("genre-bitmap", steps.get(1).getAccessPath());
+        assertEquals("title-verify", steps.get(steps.size() - 1).getAccessPath());
+        assertEquals(1, plan.getResultCount());
+        assertEquals("Space Wars: The Beginning", plan.getResults().get(0).getMovieName());
+    }
+
+    @Test
+    public void testPlanSearchFallsBackToScanForShortNames() {
+        SearchPlan plan = movieService.planSearch("he", null, null, null);
+        assertEquals("title-scan", plan.getSteps().get(plan.getSteps().size() - 1).getAccessPath());
+        for (Movie movie : plan.getResults()) {
+            assertTrue(movie.getMovieName().toLowerCase().contains("he"));
+        }
+    }
+
+    @Test
+    public void testSearchByTextRanksDescriptionMatches() {
+        List<Movie> results = movieService.searchByText("redemption", 10);
+        assertEquals(2, results.size());
+        for (Movie movie : results) {
+            assertTrue(movie.getDescription().toLowerCase().contains("redemption"));
+        }
+    }
+
+    @Test
+    public void testSearchByTextPrefersTitleMatches() {
+        List<Movie> results = movieService.searchByText("masked hero", 3);
+        assertFalse(results.isEmpty());
+        assertEquals("The Masked Hero", results.get(0).getMovieName());
+    }
+
+    @Test
+    public void testSearchByTextIgnoresStopwordsAndRespectsLimit() {
+        assertTrue(movieService.searchByText("the of and", 10).isEmpty());
+        assertEquals(1, movieService.searchByText("director moviemaker filmmaker", 1).size());
+    }
+
+    @Test
+    public void testSearchByTextWithinCandidates() {
+        List<Movie> results = movieService.searchByText("redemption", 10, null, null, "Crime", null);
+        assertEquals(1, results.size());
+        assertEquals("Urban Stories", results.get(0).getMovieName());
+    }
+
+    @Test
+    public void testReplaceCatalogUpdatesTextIndex() {
+        List<Movie> updated = new ArrayList<>(movieService.getAllMovies());
+        updated.remove(0);
+        updated.add(new Movie(13L, "Harbor Lights", "Nova Director", 2015, "Drama", "A lighthouse keeper guards a secret harbor.", 101, 4.0));
+        movieService.replaceCatalog(updated);
+
+        assertEquals(updated.size(), movieService.getAllMovies().size());
+        assertFalse(movieService.getMovieById(1L).isPresent());
+        assertEquals(13L, movieService.searchByText("lighthouse", 5).get(0).getId());
+        assertTrue(movieService.searchByText("imprisoned", 5).isEmpty());
+        assertEquals(1, movieService.searchMovies("Harbor", null, null, null).size());
+    }
+
+    @Test
+    public void testReloadCatalogPicksUpChangesToExternalCatalog() throws Exception {
+        Path catalog = Files.createTempFile("movies", ".json");
+        writeCatalog(catalog,
+            movieJson(1, "Harbor Lights", "A lighthouse keeper guards a secret harbor."),
+            movieJson(2, "Desert Run", "Smugglers cross the dunes at night."));
+        MovieService external = new MovieService(catalog.toString(), "", 1);
+        assertEquals(2, external.getAllMovies().size());
+        assertEquals(1L, external.searchByText("lighthouse", 5).get(0).getId());
+
+        writeCatalog(catalog,
+            movieJson(1, "Harbor Lights", "A lighthouse keeper guards a secret harbor."),
+            movieJson(2, "Desert Run", "Nomads race camels across the dunes."),
+            movieJson(3, "Glacier", "Climbers are stranded on a glacier."));
+        assertEquals(3, external.reloadCatalog());
+
+        assertEquals(3, external.getAllMovies().size());
+        assertTrue(external.searchByText("smugglers", 5).isEmpty());
+        assertEquals(2L, external.searchByText("camels", 5).get(0).getId());
+        assertEquals(3L, external.searchByText("stranded", 5).get(0).getId());
+        assertEquals(1, external.searchMovies("Glacier", null, null, null).size());
+
+        // A file without movies is refused and the current catalog kept
+        writeCatalog(catalog);
+        assertThrows(IllegalStateException.class, external::reloadCatalog);
+        assertEquals(3, external.getAllMovies().size());
+        Files.delete(catalog);
+    }
+
+    @Test
+    public void testReloadCatalogRefusedForBundledCatalog() {
+        assertThrows(IllegalStateException.class, movieService::reloadCatalog);
+        assertEquals(12, movieService.getAllMovies().size());
+    }
+
+    static String movieJson(long id, String name, String description) {
+        return "{\"id\": " + id + ", \"movieName\": \"" + name + "\", \"director\": \"Nova Director\", \"year\": 2015,"
+            + " \"genre\": \"Drama\", \"description\": \"" + description + "\", \"duration\": 101, \"imdbRating\": 4.0}";
+    }
+
+    static void writeCatalog(Path path, String... movies) throws IOException {
+        Files.write(path, ("[" + String.join(",", movies) + "]").getBytes("UTF-8"));
+    }
+
+    @Test
+    public void testConcurrentEquivalentSearchesShareOneExecution() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger executions = new AtomicInteger();
+        MovieService blockingService = new MovieService() {
+            @Override
+            public SearchPlan planSearch(String name, Long id, String genre, String director) {
+                executions.incrementAndGet();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.planSearch(name, id, genre, director);
+            }
+        };
+        String[] genres = {"Drama", " drama ", "DRAMA", "drama"};
+        ExecutorService pool = Executors.newFixedThreadPool(genres.length);
+        List<Future<List<Movie>>> futures = new ArrayList<>();
+        for (String genre : genres) {
+            futures.add(pool.submit(() -> blockingService.searchMovies(null, null, genre, "")));
+        }
+        while (blockingService.getSearchCoalescingStats().getCalls() < genres.length) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+
+        List<Movie> first = futures.get(0).get();
+        for (Future<List<Movie>> future : futures) {
+            assertSame(first, future.get());
+        }
+        pool.shutdown();
+        assertFalse(first.isEmpty());
+        assertEquals(1, executions.get());
+        SingleFlight.Stats stats = blockingService.getSearchCoalescingStats();
+        assertEquals(1, stats.getExecutions());
+        assertEquals(0.75, stats.getCoalescingRatio(), 1e-9);
+        assertEquals(0, stats.getInFlight());
+
+        // Nothing is cached: the same search afterwards runs again
+        blockingService.searchMovies(null, null, "Drama", null);
+        assertEquals(2, executions.get());
+    }
+}
@@ -0,0 +1,229 @@
+package com.amazonaws.samples.qdevmovies.movies;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MovieSnapshotTest {
+
+    private final List<Movie> movies = Arrays.asList(
+        new Movie(7L, "Zeta Story", "Same Director", 2001, "Drama", "Ünïcode déscription 🎬", 100, 4.5),
+        new Movie(2L, "Alpha Story", "Same Director", 1999, "Drama", "Plain description", 90, 3.0),
+        new Movie(5L, "Mid Story", "Other Director", 2010, "Action", "", 120, 5.0)
+    );
+
+    @Test
+    public void testRoundTripPreservesOrderAndFields() throws IOException {
+        Path path = Files.createTempFile("movies", ".snapshot");
+        MovieSnapshot.write(movies, path);
+        MovieSnapshot snapshot = MovieSnapshot.open(path);
+
+        assertEquals(3, snapshot.size());
+        for (int i = 0; i < movies.size(); i++) {
+            Movie expected = movies.get(i);
+            Movie actual = snapshot.get(i);
+            assertEquals(expected.getId(), actual.getId());
+            assertEquals(expected.getMovieName(), actual.getMovieName());
+            assertEquals(expected.getDirector(), actual.getDirector());
+            assertEquals(expected.getYear(), actual.getYear());
+            assertEquals(expected.getGenre(), actual.getGenre());
+            assertEquals(expected.getDescription(), actual.getDescription());
+            assertEquals(expected.getDuration(), actual.getDuration());
+            assertEquals(expected.getImdbRating(), actual.getImdbRating(), 0.0);
+        }
+        Files.delete(path);
+    }
+
+    @Test
+    public void testFindByIdUsesIdIndex() throws IOException {
+        Path path = Files.createTempFile("movies", ".snapshot");
+        MovieSnapshot.write(movies, path);
+        MovieSnapshot snapshot = MovieSnapshot.open(path);
+
+        assertEquals("Mid Story", snapshot.findById(5L).getMovieName());
+        assertEquals("Zeta Story", snapshot.findById(7L).getMovieName());
+        assertNull(snapshot.findById(3L));
+        Files.delete(path);
+    }
+
+    @Test
+    public void testSourceHashIdentifiesCatalog() throws IOException {
+        Path path = Files.createTempFile("movies", ".snapshot");
+        byte[] source = "[{\"id\": 7}]".getBytes("UTF-8");
+        MovieSnapshot.write(movies, MovieSnapshot.sourceHash(source), path);
+        MovieSnapshot snapshot = MovieSnapshot.open(path);
+
+        assertTrue(snapshot.matchesSource(MovieSnapshot.sourceHash(source)));
+        assertFalse(snapshot.matchesSource(MovieSnapshot.sourceHash("[{\"id\": 8}]".getBytes("UTF-8"))));
+        assertEquals("Zeta Story", snapshot.findById(7L).getMovieName());
+        Files.delete(path);
+    }
+
+    @Test
+    public void testMappedIndexesAnswerLikeFreshlyBuiltOnes() throws IOException {
+        List<Movie> catalog = syntheticCatalog(3000);
+        Path path = Files.createTempFile("movies", ".snapshot");
+        MovieSnapshot.write(catalog, path);
+        MovieSnapshot snapshot = MovieSnapshot.open(path);
+
+        // Common keys are stored as words, rare ones as positions
+        MovieSearchIndex built = new MovieSearchIndex(catalog);
+        MovieSearchIndex mapped = snapshot.searchIndex();
+        assertEquals(built.size(), mapped.size());
+        for (String needle : new String[] {"drama", "crime", "sci", "nothing"}) {
+            assertEquals(built.matchGenre(needle), mapped.matchGenre(needle));
+        }
+        for (String needle : new String[] {"director 7", "director 42", "nobody"}) {
+            assertEquals(built.matchDirector(needle), mapped.matchDirector(needle));
+        }
+        for (String needle : new String[] {"movie", "ie 12", "movie 2999", "zzz", "mo"}) {
+            assertEquals(built.titleCandidates(needle), mapped.titleCandidates(needle));
+        }
+
+        SimilarMovies similar = SimilarMovies.build(catalog, new CatalogScan(1));
+        for (long id = 0; id <= catalog.size() + 1; id++) {
+            assertArrayEquals(similar.neighboursOf(id), snapshot.similarMovies().neighboursOf(id));
+        }
+
+        MovieTextIndex heapIndex = new MovieTextIndex();
+        for (Movie movie : catalog) {
+            heapIndex.addMovie(movie);
+        }
+        MovieTextIndex mappedIndex = snapshot.textIndex();
+        assertEquals(catalog.size(), mappedIndex.size());
+        for (String query : new String[] {"story", "glacier", "family story glacier", "director 42", "w17 w99"}) {
+            List<MovieTextIndex.Hit> expected = heapIndex.search(query, 10);
+            List<MovieTextIndex.Hit> actual = mappedIndex.search(query, 10);
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getMovieId(), actual.get(i).getMovieId());
+                assertEquals(expected.get(i).getScore(), actual.get(i).getScore(), 1e-9);
+            }
+        }
+        assertEquals(MovieService.genresOf(catalog), snapshot.genres());
+        Files.delete(path);
+    }
+
+    @Test
+    public void testMappedTextIndexIsReadOnly() throws IOException {
+        Path path = Files.createTempFile("movies", ".snapshot");
+        MovieSnapshot.write(movies, path);
+        MovieTextIndex index = MovieSnapshot.open(path).textIndex();
+
+        // Documents are numbered by row
+        assertArrayEquals(new int[] {0, 1, 2}, index.positionsByDoc(movies));
+        assertEquals(7L, index.search("unicode zeta", 1).get(0).getMovieId());
+        assertThrows(UnsupportedOperationException.class, () -> index.addMovie(movies.get(0)));
+        assertThrows(UnsupportedOperationException.class, () -> index.removeMovie(7L));
+        Files.delete(path);
+    }
+
+    @Test
+    public void testOpenRejectsOtherFiles() throws IOException {
+        Path path = Files.createTempFile("movies", ".json");
+        Files.write(path, "[{\"id\": 1}]".getBytes("UTF-8"));
+        assertThrows(IOException.class, () -> MovieSnapshot.open(path));
+        Files.delete(path);
+    }
+
+    @Test
+    public void testSnapshotIsWrittenFromJsonAndMappedOnNextStart() throws Exception {
+        Path dir = Files.createTempDirectory("movies");
+        Path snapshot = dir.resolve("movies.snapshot");
+
+        MovieService fromJson = new MovieService(snapshot.toString());
+        assertTrue(Files.exists(snapshot));
+
+        MovieService fromSnapshot = new MovieService(snapshot.toString());
+        assertEquals(fromJson.getAllMovies().size(), fromSnapshot.getAllMovies().size());
+        assertEquals("The Prison Escape", fromSnapshot.getMovieById(1L).get().getMovieName());
+        assertEquals(fromJson.searchMovies(null, null, "Drama", null).size(),
+            fromSnapshot.searchMovies(null, null, "Drama", null).size());
+        assertEquals(1L, fromSnapshot.searchByText("imprisoned", 1).get(0).getId());
+        assertEquals(ids(new MovieService().searchByText("story", 5, null, null, "drama", null)),
+            ids(fromSnapshot.searchByText("story", 5, null, null, "drama", null)));
+        assertEquals(ids(new MovieService().getSimilarMovies(3L, 3)), ids(fromSnapshot.getSimilarMovies(3L, 3)));
+        assertEquals(new MovieService().getAllGenres(), fromSnapshot.getAllGenres());
+
+        Files.delete(snapshot);
+        Files.delete(dir);
+    }
+
+    @Test
+    public void testSnapshotIsRebuiltWhenCatalogChanges() throws Exception {
+        Path dir = Files.createTempDirectory("movies");
+        Path catalog = dir.resolve("movies.json");
+        Path snapshot = dir.resolve("movies.snapshot");
+        MovieServiceTest.writeCatalog(catalog, MovieServiceTest.movieJson(1, "Harbor Lights", "A lighthouse keeper guards a secret harbor."));
+        new MovieService(catalog.toString(), snapshot.toString(), 1);
+        assertTrue(MovieSnapshot.open(snapshot).matchesSource(MovieSnapshot.sourceHash(Files.readAllBytes(catalog))));
+
+        // A deploy with an updated catalog must not keep serving the old snapshot
+        MovieServiceTest.writeCatalog(catalog,
+            MovieServiceTest.movieJson(1, "Harbor Lights", "A lighthouse keeper guards a secret harbor."),
+            MovieServiceTest.movieJson(2, "Desert Run", "Smugglers cross the dunes at night."));
+        MovieService restarted = new MovieService(catalog.toString(), snapshot.toString(), 1);
+        assertEquals(2, restarted.getAllMovies().size());
+        assertTrue(restarted.getAllMovies() instanceof MovieSnapshot);
+        assertEquals("Desert Run", restarted.getMovieById(2L).get().getMovieName());
+        assertEquals(2, MovieSnapshot.open(snapshot).size());
+
+        Files.delete(snapshot);
+        Files.delete(catalog);
+        Files.delete(dir);
+    }
+
+    @Test
+    public void testReloadSwapsInTheIndexesOfTheNewSnapshot() throws Exception {
+        Path dir = Files.createTempDirectory("movies");
+        Path catalog = dir.resolve("movies.json");
+        Path snapshot = dir.resolve("movies.snapshot");
+        MovieServiceTest.writeCatalog(catalog, MovieServiceTest.movieJson(1, "Harbor Lights", "A lighthouse keeper guards a secret harbor."));
+        MovieService service = new MovieService(catalog.toString(), snapshot.toString(), 1);
+        assertEquals(1L, service.searchByText("lighthouse", 5).get(0).getId());
+
+        MovieServiceTest.writeCatalog(catalog,
+            MovieServiceTest.movieJson(2, "Desert Run", "Smugglers cross the dunes at night."),
+            MovieServiceTest.movieJson(1, "Harbor Lights", "A lighthouse keeper guards a secret harbor."));
+        assertEquals(2, service.reloadCatalog());
+        assertEquals(2L, service.searchByText("smugglers", 5).get(0).getId());
+        assertEquals(1L, service.searchByText("lighthouse", 5, "harbor", null, null, null).get(0).getId());
+        assertEquals(1, service.searchMovies("desert", null, null, null).size());
+
+        Files.delete(snapshot);
+        Files.delete(catalog);
+        Files.delete(dir);
+    }
+
+    private static List<Long> ids(List<Movie> movies) {
+        List<Long> ids = new ArrayList<>();
+        for (Movie movie : movies) {
+            ids.add(movie.getId());
+        }
+        return ids;
+    }
+
+    private static List<Movie> syntheticCatalog(int size) {
+        String[] genres = {"Drama", "Crime/Drama", "Sci-Fi/Action", "Comedy"};
+        String[] words = {"story", "family", "glacier", "life", "world"};
+        Random random = new Random(7);
+        List<Movie> catalog = new ArrayList<>();
+        for (int i = 1; i <= size; i++) {
+            StringBuilder description = new StringBuilder();
+            for (int w = 0; w < 5 + random.nextInt(20); w++) {
+                description.append(random.nextInt(4) == 0 ? words[random.nextInt(words.length)] : "w" + random.nextInt(500)).append(' ');
+            }
+            catalog.add(new Movie(i, "Movie " + i, "Director " + random.nextInt(200), 1950 + random.nextInt(70),
+                genres[random.nextInt(genres.length)], description.toString(), 90, 1 + random.nextInt(40) / 10.0));
+        }
+        return catalog;
+    }
+}
@@ -0,0 +1,51 @@
+package com.amazonaws.samples.qdevmovies.movies;
+
+import java.util.Random;
+
+/**
+ * Measures full-text query latency as the number of indexed descriptions grows, for a
+ * common term, a rare term and a mixed query. Not part of the test suite; run it with
+ * {@code java -cp <test classpath> com.amazonaws.samples.qdevmovies.movies.MovieTextIndexBenchmark [maxMovies]}.
+ */
+public class MovieTextIndexBenchmark {
+    private static final String[] COMMON = {"story", "life", "world", "family", "love", "man"};
+    private static final String[] QUERIES = {"story", "glacier", "family story glacier"};
+
+    public static void main(String[] args) {
+        int maxMovies = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Random random = new Random(42);
+        MovieTextIndex index = new MovieTextIndex();
+        System.out.printf("%10s %24s %12s%n", "movies", "query", "us/query");
+        int indexed = 0;
+        for (int target = 10_000; target <= maxMovies; target *= 10) {
+            for (; indexed < target; indexed++) {
+                index.addMovie(syntheticMovie(indexed + 1, random));
+            }
+            for (String query : QUERIES) {
+                for (int i = 0; i < 2_000; i++) {
+                    index.search(query, 10);
+                }
+                int rounds = 2_000;
+                long start = System.nanoTime();
+                for (int i = 0; i < rounds; i++) {
+                    index.search(query, 10);
+                }
+                System.out.printf("%10d %24s %12.1f%n", indexed, query, (System.nanoTime() - start) / 1e3 / rounds);
+            }
+        }
+    }
+
+    private static Movie syntheticMovie(long id, Random random) {
+        StringBuilder description = new StringBuilder();
+        int words = 5 + random.nextInt(60);
+        for (int i = 0; i < words; i++) {
+            // Common words in most descriptions, plus a long tail of rare ones
+            description.append(random.nextInt(6) == 0 ? COMMON[random.nextInt(COMMON.length)] : "w" + random.nextInt(200_000)).append(' ');
+        }
+        if (random.nextInt(1000) == 0) {
+            description.append("glacier");
+        }
+        return new Movie(id, "Movie " + id, "Director " + random.nextInt(5000), 2000, "Drama",
+            description.toString(), 100, 4.0);
+    }
+}
@@ -0,0 +1,171 @@
+package com.amazonaws.samples.qdevmovies.movies;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.IntPredicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MovieTextIndexTest {
+    private static final String[] WORDS = {"harbor", "storm", "keeper", "desert", "smuggler", "glacier", "heist",
+        "detective", "orbit", "robot", "dragon", "castle", "river", "train", "jungle", "witness"};
+
+    @Test
+    public void testPrunedSearchMatchesExhaustiveRanking() {
+        Random random = new Random(7);
+        MovieTextIndex index = new MovieTextIndex();
+        Map<Long, Movie> live = new HashMap<>();
+        // Several blocks per common term, so whole blocks can be skipped
+        for (long id = 1; id <= 3000; id++) {
+            Movie movie = randomMovie(id, random);
+            index.addMovie(movie);
+            live.put(id, movie);
+        }
+        // Remove and replace enough movies that some posting lists are compacted
+        for (long id = 1; id <= 3000; id += 2) {
+            index.removeMovie(id);
+            live.remove(id);
+        }
+        for (long id = 2; id <= 600; id += 2) {
+            Movie movie = randomMovie(id, random);
+            index.addMovie(movie);
+            live.put(id, movie);
+        }
+        assertEquals(live.size(), index.size());
+
+        String[] queries = {"harbor", "storm keeper", "desert smuggler heist", "orbit robot dragon castle", "witness zzz"};
+        for (String query : queries) {
+            for (int limit : new int[] {1, 5, 20}) {
+                assertSameHits(exhaustive(live.values(), query, limit, null), index.search(query, limit));
+            }
+        }
+    }
+
+    @Test
+    public void testFilterIsAppliedBeforeHitsAreKept() {
+        Random random = new Random(11);
+        MovieTextIndex index = new MovieTextIndex();
+        List<Movie> movies = new ArrayList<>();
+        for (long id = 1; id <= 1000; id++) {
+            Movie movie = randomMovie(id, random);
+            index.addMovie(movie);
+            movies.add(movie);
+        }
+        int[] positions = index.positionsByDoc(movies);
+        Set<Long> allowed = new HashSet<>();
+        for (long id = 3; id <= 1000; id += 7) {
+            allowed.add(id);
+        }
+        IntPredicate allowedDocs = doc -> positions[doc] >= 0 && allowed.contains(movies.get(positions[doc]).getId());
+
+        List<MovieTextIndex.Hit> hits = index.search("storm keeper", 10, allowedDocs);
+        assertSameHits(exhaustive(movies, "storm keeper", 10, allowed), hits);
+        for (MovieTextIndex.Hit hit : hits) {
+            assertTrue(allowed.contains(hit.getMovieId()));
+        }
+        assertTrue(index.search("storm", 10, doc -> false).isEmpty());
+    }
+
+    @Test
+    public void testPositionsByDocFollowsReplacedMovies() {
+        MovieTextIndex index = new MovieTextIndex();
+        Movie first = new Movie(1L, "Harbor", "A", 2000, "Drama", "storm", 90, 4.0);
+        Movie second = new Movie(2L, "Desert", "B", 2001, "Drama", "sand", 90, 4.0);
+        index.addMovie(first);
+        index.addMovie(second);
+        Movie changed = new Movie(1L, "Harbor", "A", 2000, "Drama", "glacier", 90, 4.0);
+        index.addMovie(changed);
+
+        List<Movie> catalog = java.util.Arrays.asList(second, changed);
+        int[] positions = index.positionsByDoc(catalog);
+        int found = 0;
+        for (int position : positions) {
+            if (position >= 0) {
+                found++;
+            }
+        }
+        assertEquals(2, found);
+        assertTrue(index.search("storm", 5).isEmpty());
+        assertEquals(1L, index.search("glacier", 5).get(0).getMovieId());
+    }
+
+    private static Movie randomMovie(long id, Random random) {
+        StringBuilder description = new StringBuilder();
+        int words = 3 + random.nextInt(30);
+        for (int i = 0; i < words; i++) {
+            // Skewed so a few words are very common and the rest rare
+            int word = (int) (WORDS.length * Math.pow(random.nextDouble(), 3));
+            description.append(WORDS[word]).append(' ');
+        }
+        return new Movie(id, WORDS[random.nextInt(WORDS.length)] + " " + id, "Director " + random.nextInt(50),
+            2000, "Drama", description.toString(), 100, 4.0);
+    }
+
+    private static void assertSameHits(List<MovieTextIndex.Hit> expected, List<MovieTextIndex.Hit> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getMovieId(), actual.get(i).getMovieId());
+            assertEquals(expected.get(i).getScore(), actual.get(i).getScore(), 1e-9);
+        }
+    }
+
+    /**
+     * Scores every movie against every query term, as BM25 defines it.
+     */
+    private static List<MovieTextIndex.Hit> exhaustive(java.util.Collection<Movie> movies, String query, int limit, Set<Long> allowed) {
+        Map<Long, Map<String, Integer>> frequencies = new HashMap<>();
+        Map<Long, Integer> lengths = new HashMap<>();
+        Map<String, Integer> documentFrequencies = new HashMap<>();
+        long totalLength = 0;
+        for (Movie movie : movies) {
+            Map<String, Integer> tf = new HashMap<>();
+            int length = 0;
+            for (String token : MovieTextIndex.tokenize(movie.getMovieName())) {
+                tf.merge(token, MovieTextIndex.TITLE_BOOST, Integer::sum);
+                length += MovieTextIndex.TITLE_BOOST;
+            }
+            for (String token : MovieTextIndex.tokenize(movie.getDirector() + " " + movie.getDescription())) {
+                tf.merge(token, 1, Integer::sum);
+                length++;
+            }
+            frequencies.put(movie.getId(), tf);
+            lengths.put(movie.getId(), length);
+            totalLength += length;
+            for (String term : tf.keySet()) {
+                documentFrequencies.merge(term, 1, Integer::sum);
+            }
+        }
+        double averageLength = (double) totalLength / movies.size();
+        List<MovieTextIndex.Hit> hits = new ArrayList<>();
+        for (Movie movie : movies) {
+            if (allowed != null && !allowed.contains(movie.getId())) {
+                continue;
+            }
+            double score = 0;
+            boolean matched = false;
+            for (String term : new HashSet<>(MovieTextIndex.tokenize(query))) {
+                Integer tf = frequencies.get(movie.getId()).get(term);
+                if (tf != null) {
+                    int df = documentFrequencies.get(term);
+                    double idf = Math.log(1 + (movies.size() - df + 0.5) / (df + 0.5));
+                    double norm = MovieTextIndex.K1 * (1 - MovieTextIndex.B + MovieTextIndex.B * lengths.get(movie.getId()) / averageLength);
+                    score += idf * tf * (MovieTextIndex.K1 + 1) / (tf + norm);
+                    matched = true;
+                }
+            }
+            if (matched) {
+                hits.add(new MovieTextIndex.Hit(movie.getId(), score));
+            }
+        }
+        hits.sort(java.util.Comparator.comparingDouble(MovieTextIndex.Hit::getScore).reversed()
+            .thenComparingLong(MovieTextIndex.Hit::getMovieId));
+        return hits.subList(0, Math.min(limit, hits.size()));
+    }
+}
@@ -2,9 +2,14 @@ package com.amazonaws.samples.qdevmovies.movies;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.json.JSONObject;
+import org.springframework.http.ResponseEntity;
 import org.springframework.ui.Model;
 import org.springframework.ui.ExtendedModelMap;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -14,6 +19,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 public class MoviesControllerTest {
 
@@ -49,7 +55,7 @@ public class MoviesControllerTest {
             }
             
             @Override
-            public List<Movie> searchMovies(String name, Long id, String genre) {
+            public List<Movie> searchMovies(String name, Long id, String genre, String director) {
                 List<Movie> allMovies = getAllMovies();
                 List<Movie> results = new ArrayList<>();
                 
@@ -80,6 +86,12 @@ public class MoviesControllerTest {
                             .contains(genre.trim().toLowerCase());
                     }
                     
+                    // Check director match (case-insensitive partial match)
+                    if (director != null && !director.trim().isEmpty()) {
+                        matches = matches && movie.getDirector().toLowerCase()
+                            .contains(director.trim().toLowerCase());
+                    }
+                    
                     if (matches) {
                         results.add(movie);
                     }
@@ -88,6 +100,25 @@ public class MoviesControllerTest {
                 return results;
             }
             
+            @Override
+            public List<Movie> getSimilarMovies(long id, int limit) {
+                List<Movie> similar = new ArrayList<>();
+                getMovieById(id == 1L ? 2L : 1L).ifPresent(similar::add);
+                return similar.subList(0, Math.min(limit, similar.size()));
+            }
+            
+            @Override
+            public List<Movie> searchByText(String query, int limit, String name, Long id, String genre, String director) {
+                List<Movie> results = new ArrayList<>();
+                for (Movie movie : searchMovies(name, id, genre, director)) {
+                    if (movie.getDescription().toLowerCase().contains(query.trim().toLowerCase())
+                            && results.size() < limit) {
+                        results.add(movie);
+                    }
+                }
+                return results;
+            }
+            
             @Override
             public List<String> getAllGenres() {
                 return Arrays.asList("Action", "Comedy", "Drama");
@@ -96,8 +127,19 @@ public class MoviesControllerTest {
         
         mockReviewService = new ReviewService() {
             @Override
-            public List<Review> getReviewsForMovie(long movieId) {
-                return new ArrayList<>();
+            public ReviewPage getReviewPage(long movieId, ReviewSort sort, String cursor, int limit) {
+                List<Review> reviews = Arrays.asList(
+                    new Review("First", "👨", 4.0, "Good"),
+                    new Review("Second", "👩", 5.0, "Great \"quoted\""));
+                return new MovieReviews(movieId, reviews).page(sort, cursor, limit);
+            }
+            
+            @Override
+            public Review submitReview(long movieId, String userName, String avatarEmoji, Double rating, String comment) {
+                if (rating == null || rating > 5.0) {
+                    throw new IllegalArgumentException("rating must be between 0.5 and 5.0");
+                }
+                return new Review("review-1", userName, avatarEmoji, rating, comment, 1L);
             }
         };
         
@@ -117,7 +159,7 @@ public class MoviesControllerTest {
 
     @Test
     public void testGetMoviesWithoutSearch() {
-        String result = moviesController.getMovies(model, null, null, null);
+        String result = moviesController.getMovies(model, null, null, null, null);
         assertNotNull(result);
         assertEquals("movies", result);
         
@@ -129,7 +171,7 @@ public class MoviesControllerTest {
 
     @Test
     public void testGetMoviesWithNameSearch() {
-        String result = moviesController.getMovies(model, "Test", null, null);
+        String result = moviesController.getMovies(model, "Test", null, null, null);
         assertNotNull(result);
         assertEquals("movies", result);
         
@@ -143,7 +185,7 @@ public class MoviesControllerTest {
 
     @Test
     public void testGetMoviesWithGenreSearch() {
-        String result = moviesController.getMovies(model, null, null, "Action");
+        String result = moviesController.getMovies(model, null, null, "Action", null);
         assertNotNull(result);
         assertEquals("movies", result);
         
@@ -157,7 +199,7 @@ public class MoviesControllerTest {
 
     @Test
     public void testGetMoviesWithIdSearch() {
-        String result = moviesController.getMovies(model, null, 2L, null);
+        String result = moviesController.getMovies(model, null, 2L, null, null);
         assertNotNull(result);
         assertEquals("movies", result);
         
@@ -171,7 +213,7 @@ public class MoviesControllerTest {
 
     @Test
     public void testGetMoviesWithNoResults() {
-        String result = moviesController.getMovies(model, "NonExistent", null, null);
+        String result = moviesController.getMovies(model, "NonExistent", null, null, null);
         assertNotNull(result);
         assertEquals("movies", result);
         
@@ -185,7 +227,7 @@ public class MoviesControllerTest {
 
     @Test
     public void testSearchMoviesApi() {
-        List<Movie> result = moviesController.searchMoviesApi("Test", null, null);
+        List<Movie> result = moviesController.searchMoviesApi("Test", null, null, null, null, 10);
         assertNotNull(result);
         assertEquals(1, result.size());
         assertEquals("Test Movie", result.get(0).getMovieName());
@@ -193,7 +235,7 @@ public class MoviesControllerTest {
 
     @Test
     public void testSearchMoviesApiWithId() {
-        List<Movie> result = moviesController.searchMoviesApi(null, 2L, null);
+        List<Movie> result = moviesController.searchMoviesApi(null, 2L, null, null, null, 10);
         assertNotNull(result);
         assertEquals(1, result.size());
         assertEquals("Action Movie", result.get(0).getMovieName());
@@ -201,7 +243,7 @@ public class MoviesControllerTest {
 
     @Test
     public void testSearchMoviesApiWithGenre() {
-        List<Movie> result = moviesController.searchMoviesApi(null, null, "Comedy");
+        List<Movie> result = moviesController.searchMoviesApi(null, null, "Comedy", null, null, 10);
         assertNotNull(result);
         assertEquals(1, result.size());
         assertEquals("Comedy Film", result.get(0).getMovieName());
@@ -209,18 +251,49 @@ public class MoviesControllerTest {
 
     @Test
     public void testSearchMoviesApiWithNoParams() {
-        List<Movie> result = moviesController.searchMoviesApi(null, null, null);
+        List<Movie> result = moviesController.searchMoviesApi(null, null, null, null, null, 10);
         assertNotNull(result);
         assertEquals(3, result.size()); // Should return all movies
     }
 
     @Test
     public void testSearchMoviesApiWithEmptyParams() {
-        List<Movie> result = moviesController.searchMoviesApi("", 0L, "");
+        List<Movie> result = moviesController.searchMoviesApi("", 0L, "", null, null, 10);
         assertNotNull(result);
         assertEquals(3, result.size()); // Should return all movies
     }
 
+    @Test
+    public void testSearchMoviesApiWithDirector() {
+        List<Movie> result = moviesController.searchMoviesApi(null, null, null, "comedy director", null, 10);
+        assertNotNull(result);
+        assertEquals(1, result.size());
+        assertEquals("Comedy Film", result.get(0).getMovieName());
+    }
+
+    @Test
+    public void testSearchMoviesApiWithText() {
+        List<Movie> result = moviesController.searchMoviesApi(null, null, null, null, "description", 2);
+        assertEquals(2, result.size());
+        
+        List<Movie> filtered = moviesController.searchMoviesApi(null, null, "Comedy", null, "description", 10);
+        assertEquals(1, filtered.size());
+        assertEquals("Comedy Film", filtered.get(0).getMovieName());
+    }
+
+    @Test
+    public void testGetMoviesWithDirectorSearch() {
+        String result = moviesController.getMovies(model, null, null, null, "Action");
+        assertEquals("movies", result);
+        
+        @SuppressWarnings("unchecked")
+        List<Movie> movies = (List<Movie>) model.getAttribute("movies");
+        assertEquals(1, movies.size());
+        assertEquals("Action Movie", movies.get(0).getMovieName());
+        assertTrue((Boolean) model.getAttribute("searchPerformed"));
+        assertEquals("Action", model.getAttribute("searchDirector"));
+    }
+
     @Test
     public void testGetMovieDetails() {
         String result = moviesController.getMovieDetails(1L, model);
@@ -228,6 +301,101 @@ public class MoviesControllerTest {
         assertEquals("movie-details", result);
     }
 
+    @Test
+    public void testGetMovieDetailsRendersFirstReviewPage() {
+        moviesController.getMovieDetails(1L, model);
+        ReviewPage page = (ReviewPage) model.getAttribute("reviewPage");
+        assertNotNull(page);
+        assertEquals(2, page.getTotal());
+        assertEquals("Second", page.getReviews().get(0).getUserName());
+    }
+
+    @Test
+    public void testGetMovieReviewsStreamsJsonPage() throws Exception {
+        ResponseEntity<StreamingResponseBody> response = moviesController.getMovieReviews(1L, "highest", null, 1);
+        assertEquals(200, response.getStatusCodeValue());
+        
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+        JSONObject page = new JSONObject(out.toString("UTF-8"));
+        assertEquals(2, page.getInt("total"));
+        assertEquals("highest", page.getString("sort"));
+        assertEquals("Second", page.getJSONArray("reviews").getJSONObject(0).getString("userName"));
+        assertEquals("Great \"quoted\"", page.getJSONArray("reviews").getJSONObject(0).getString("comment"));
+        
+        ResponseEntity<StreamingResponseBody> next = moviesController.getMovieReviews(1L, "highest", page.getString("nextCursor"), 1);
+        out.reset();
+        next.getBody().writeTo(out);
+        JSONObject secondPage = new JSONObject(out.toString("UTF-8"));
+        assertEquals("First", secondPage.getJSONArray("reviews").getJSONObject(0).getString("userName"));
+        assertTrue(secondPage.isNull("nextCursor"));
+    }
+
+    @Test
+    public void testGetMovieReviewsNotFound() {
+        assertEquals(404, moviesController.getMovieReviews(999L, "newest", null, 10).getStatusCodeValue());
+    }
+
+    @Test
+    public void testGetMovieReviewsRejectsBadSortAndCursor() {
+        assertThrows(ResponseStatusException.class, () -> moviesController.getMovieReviews(1L, "oldest", null, 10));
+        assertThrows(ResponseStatusException.class, () -> moviesController.getMovieReviews(1L, "newest", "not-a-cursor", 10));
+    }
+
+    @Test
+    public void testSubmitReview() {
+        ReviewRequest request = new ReviewRequest();
+        request.setUserName("Critic");
+        request.setRating(4.0);
+        request.setComment("Solid");
+        
+        ResponseEntity<Review> response = moviesController.submitReview(1L, request);
+        assertEquals(201, response.getStatusCodeValue());
+        assertEquals("review-1", response.getBody().getId());
+        
+        assertEquals(404, moviesController.submitReview(999L, request).getStatusCodeValue());
+        
+        request.setRating(9.0);
+        assertThrows(ResponseStatusException.class, () -> moviesController.submitReview(1L, request));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testGetMovieDetailsShowsSimilarMovies() {
+        moviesController.getMovieDetails(1L, model);
+        List<Movie> similar = (List<Movie>) model.getAttribute("similarMovies");
+        assertEquals(1, similar.size());
+        assertEquals(2L, similar.get(0).getId());
+    }
+
+    @Test
+    public void testGetSimilarMoviesApi() {
+        ResponseEntity<List<Movie>> response = moviesController.getSimilarMovies(2L, 10);
+        assertEquals(200, response.getStatusCodeValue());
+        assertEquals(1L, response.getBody().get(0).getId());
+        assertEquals(404, moviesController.getSimilarMovies(999L, 10).getStatusCodeValue());
+    }
+
+    @Test
+    public void testReloadCatalogFromExternalFile() throws Exception {
+        java.nio.file.Path catalog = java.nio.file.Files.createTempFile("movies", ".json");
+        MovieServiceTest.writeCatalog(catalog, MovieServiceTest.movieJson(1, "Harbor Lights", "A lighthouse keeper."));
+        MovieService external = new MovieService(catalog.toString(), "", 1);
+        java.lang.reflect.Field movieServiceField = MoviesController.class.getDeclaredField("movieService");
+        movieServiceField.setAccessible(true);
+        movieServiceField.set(moviesController, external);
+
+        MovieServiceTest.writeCatalog(catalog, MovieServiceTest.movieJson(1, "Harbor Lights", "A lighthouse keeper."),
+            MovieServiceTest.movieJson(2, "Desert Run", "Smugglers cross the dunes."));
+        assertEquals(2, (int) moviesController.reloadCatalog().get("movies"));
+        assertEquals("Desert Run", moviesController.searchMoviesApi(null, null, null, null, "smugglers", 10).get(0).getMovieName());
+
+        MovieServiceTest.writeCatalog(catalog);
+        ResponseStatusException refused = assertThrows(ResponseStatusException.class, () -> moviesController.reloadCatalog());
+        assertEquals(409, refused.getStatus().value());
+        java.nio.file.Files.delete(catalog);
+    }
+
     @Test
     public void testGetMovieDetailsNotFound() {
         String result = moviesController.getMovieDetails(999L, model);
@@ -0,0 +1,105 @@
+package com.amazonaws.samples.qdevmovies.movies;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReviewCacheTest {
+    private static final long BUDGET = 1024 * 1024;
+    private static final long LARGE = 64 * 1024;
+
+    @Test
+    public void testOneMovieMayUseMostOfTheBudget() {
+        ReviewCache cache = new ReviewCache(BUDGET);
+        long bytes = BUDGET - 2 * LARGE;
+        cache.put(1L, reviews(1L), bytes);
+
+        assertNotNull(cache.get(1L));
+        assertEquals(bytes, cache.getStats().getBytes());
+
+        // Growing keeps it cached as long as it fits the whole budget
+        cache.update(1L, reviews -> reviews.withReview(new Review("Ann", "A", 4.0, "Arr")), LARGE);
+        MovieReviews grown = cache.get(1L);
+        assertNotNull(grown);
+        assertEquals(1, grown.getReviews().size());
+        assertEquals(bytes + LARGE, cache.getStats().getBytes());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedMovieIsEvicted() {
+        ReviewCache cache = new ReviewCache(BUDGET);
+        long third = BUDGET / 3;
+        cache.put(1L, reviews(1L), third);
+        cache.put(2L, reviews(2L), third);
+        cache.put(3L, reviews(3L), third);
+        assertNotNull(cache.get(1L));
+
+        // Movie 2 is the least recently used
+        cache.put(4L, reviews(4L), third);
+
+        assertNull(cache.get(2L));
+        assertNotNull(cache.get(1L));
+        assertNotNull(cache.get(3L));
+        assertNotNull(cache.get(4L));
+        ReviewCache.Stats stats = cache.getStats();
+        assertEquals(1, stats.getEvictions());
+        assertTrue(stats.getBytes() <= BUDGET);
+    }
+
+    @Test
+    public void testMovieLargerThanTheWholeCacheIsNotCached() {
+        ReviewCache cache = new ReviewCache(BUDGET);
+        cache.put(1L, reviews(1L), LARGE);
+        cache.put(2L, reviews(2L), BUDGET + 1);
+
+        assertNull(cache.get(2L));
+        assertNotNull(cache.get(1L));
+        assertEquals(LARGE, cache.getStats().getBytes());
+    }
+
+    @Test
+    public void testResetStatsKeepsCachedReviews() {
+        ReviewCache cache = new ReviewCache(BUDGET);
+        cache.put(1L, reviews(1L), 100);
+        cache.get(1L);
+        cache.get(2L);
+        cache.resetStats();
+
+        ReviewCache.Stats stats = cache.getStats();
+        assertEquals(0, stats.getHits());
+        assertEquals(0, stats.getMisses());
+        assertEquals(1, stats.getEntries());
+        assertNotNull(cache.get(1L));
+        assertEquals(1, cache.getStats().getHits());
+    }
+
+    @Test
+    public void testReadersSeeWholeUpdatesWhileWritersGrowAMovie() throws Exception {
+        ReviewCache cache = new ReviewCache(BUDGET);
+        cache.put(1L, reviews(1L), 100);
+        int updates = 2000;
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < updates; i++) {
+                cache.update(1L, reviews -> reviews.withReview(new Review("u", "A", 4.0, "c")), 100);
+            }
+        });
+        writer.start();
+        int lastSeen = 0;
+        while (writer.isAlive()) {
+            MovieReviews seen = cache.get(1L);
+            int size = seen.getReviews().size();
+            assertTrue(size >= lastSeen);
+            assertEquals(size, seen.page(ReviewSort.HIGHEST, null, updates + 1).getReviews().size());
+            lastSeen = size;
+        }
+        writer.join();
+        assertEquals(updates, cache.get(1L).getReviews().size());
+        assertEquals(100 + updates * 100L, cache.getStats().getBytes());
+    }
+
+    private static MovieReviews reviews(long movieId) {
+        return new MovieReviews(movieId, Collections.emptyList());
+    }
+}
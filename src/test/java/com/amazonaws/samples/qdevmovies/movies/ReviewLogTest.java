@@ -0,0 +1,71 @@
+package com.amazonaws.samples.qdevmovies.movies;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReviewLogTest {
+
+    @Test
+    public void testTimedOutAppendsAreNeverWritten() throws Exception {
+        Path path = Files.createTempFile("reviews", ".log");
+        ReviewLog log = new ReviewLog(path, (movieId, review, position, length) -> { });
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<String>> appends = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            Review review = new Review("review-" + i, "user", "A", 3.0, "comment " + i, 0L);
+            // Timeouts around the time a commit takes, so some appends make a batch and some are withdrawn
+            long timeoutMicros = (i % 8) * 50;
+            appends.add(pool.submit(() -> {
+                try {
+                    log.append(1L, review, timeoutMicros, TimeUnit.MICROSECONDS);
+                    return review.getId();
+                } catch (TimeoutException e) {
+                    return null;
+                }
+            }));
+        }
+        Set<String> acknowledged = new HashSet<>();
+        for (Future<String> append : appends) {
+            String id = append.get();
+            if (id != null) {
+                acknowledged.add(id);
+            }
+        }
+        pool.shutdown();
+        log.close();
+
+        Set<String> written = Collections.synchronizedSet(new HashSet<>());
+        new ReviewLog(path, (movieId, review, position, length) -> assertTrue(written.add(review.getId()))).close();
+        assertEquals(acknowledged, written);
+        Files.delete(path);
+    }
+
+    @Test
+    public void testCommittedRecordsAreReadBackByPosition() throws Exception {
+        Path path = Files.createTempFile("reviews", ".log");
+        List<long[]> positions = new ArrayList<>();
+        ReviewLog log = new ReviewLog(path, (movieId, review, position, length) -> positions.add(new long[] {position, length}));
+        log.append(7L, new Review("a", "First", "A", 4.0, "one", 1L), 10, TimeUnit.SECONDS);
+        log.append(7L, new Review("b", "Second", "B", 2.0, "two", 2L), 10, TimeUnit.SECONDS);
+
+        assertEquals(2, positions.size());
+        assertEquals("Second", log.read(positions.get(1)[0], (int) positions.get(1)[1]).getUserName());
+        assertEquals("First", log.read(positions.get(0)[0], (int) positions.get(0)[1]).getUserName());
+        log.close();
+        Files.delete(path);
+    }
+}
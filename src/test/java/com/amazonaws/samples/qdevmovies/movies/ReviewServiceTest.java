@@ -0,0 +1,246 @@
+package com.amazonaws.samples.qdevmovies.movies;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReviewServiceTest {
+
+    @Test
+    public void testGetReviewsForMovie() {
+        ReviewService reviewService = new ReviewService();
+        List<Review> reviews = reviewService.getReviewsForMovie(1L);
+        assertEquals(3, reviews.size());
+        assertEquals("MovieBuff87", reviews.get(0).getUserName());
+        assertEquals(5.0, reviews.get(0).getRating(), 0.0);
+    }
+
+    @Test
+    public void testGetReviewsForUnknownMovie() {
+        ReviewService reviewService = new ReviewService();
+        assertTrue(reviewService.getReviewsForMovie(999L).isEmpty());
+        assertEquals(0, reviewService.getCacheStats().getMisses());
+    }
+
+    @Test
+    public void testReviewsAreCachedAfterFirstAccess() {
+        ReviewService reviewService = new ReviewService();
+        List<Review> first = reviewService.getReviewsForMovie(2L);
+        List<Review> second = reviewService.getReviewsForMovie(2L);
+
+        assertSame(first, second);
+        ReviewCache.Stats stats = reviewService.getCacheStats();
+        assertEquals(1, stats.getMisses());
+        assertEquals(1, stats.getHits());
+        assertEquals(1, stats.getEntries());
+        assertTrue(stats.getBytes() > 0);
+    }
+
+    @Test
+    public void testCacheEvictsLeastRecentlyUsedWithinByteBudget() {
+        ReviewService reviewService = new ReviewService("", 2048, "");
+        for (long movieId = 1; movieId <= 12; movieId++) {
+            assertFalse(reviewService.getReviewsForMovie(movieId).isEmpty());
+        }
+
+        ReviewCache.Stats stats = reviewService.getCacheStats();
+        assertTrue(stats.getBytes() <= 2048);
+        assertTrue(stats.getEvictions() > 0);
+        assertEquals(12, stats.getMisses());
+
+        // The most recent movie is still cached, the first one was evicted
+        reviewService.getReviewsForMovie(12L);
+        reviewService.getReviewsForMovie(1L);
+        assertEquals(1, reviewService.getCacheStats().getHits());
+    }
+
+    @Test
+    public void testReviewPagesFollowCursorToTheEnd() {
+        List<Review> reviews = new java.util.ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            reviews.add(new Review("user" + i, "👤", (i % 5) + 1.0, "comment " + i));
+        }
+        MovieReviews movieReviews = new MovieReviews(1L, reviews);
+
+        for (ReviewSort sort : ReviewSort.values()) {
+            List<Review> seen = new java.util.ArrayList<>();
+            String cursor = null;
+            do {
+                ReviewPage page = movieReviews.page(sort, cursor, 7);
+                assertEquals(25, page.getTotal());
+                seen.addAll(page.getReviews());
+                cursor = page.getNextCursor();
+            } while (cursor != null);
+            assertEquals(25, seen.size());
+            assertEquals(25, new java.util.HashSet<>(seen).size());
+            for (int i = 1; i < seen.size(); i++) {
+                double previous = seen.get(i - 1).getRating();
+                double current = seen.get(i).getRating();
+                if (sort == ReviewSort.HIGHEST) {
+                    assertTrue(previous >= current);
+                } else if (sort == ReviewSort.LOWEST) {
+                    assertTrue(previous <= current);
+                }
+            }
+        }
+        assertEquals("user24", movieReviews.page(ReviewSort.NEWEST, null, 1).getReviews().get(0).getUserName());
+    }
+
+    @Test
+    public void testReviewPageRejectsMalformedCursor() {
+        ReviewService reviewService = new ReviewService();
+        assertThrows(IllegalArgumentException.class,
+            () -> reviewService.getReviewPage(1L, ReviewSort.NEWEST, "%%%", 10));
+        assertThrows(IllegalArgumentException.class, () -> ReviewSort.fromParam("random"));
+    }
+
+    @Test
+    public void testSubmittedReviewIsVisibleAndNewest() throws Exception {
+        ReviewService reviewService = withTemporaryLog();
+        reviewService.getReviewsForMovie(1L);
+
+        Review review = reviewService.submitReview(1L, "  NewCritic ", null, 1.0, "Not for me.");
+        assertNotNull(review.getId());
+        assertNotNull(review.getCreatedAt());
+        assertEquals("NewCritic", review.getUserName());
+        assertEquals(ReviewService.DEFAULT_AVATAR, review.getAvatarEmoji());
+
+        assertEquals(4, reviewService.getReviewsForMovie(1L).size());
+        assertSame(review, reviewService.getReviewPage(1L, ReviewSort.NEWEST, null, 1).getReviews().get(0));
+        assertSame(review, reviewService.getReviewPage(1L, ReviewSort.LOWEST, null, 1).getReviews().get(0));
+        reviewService.close();
+    }
+
+    @Test
+    public void testSubmittedReviewForMovieWithoutReviews() throws Exception {
+        ReviewService reviewService = withTemporaryLog();
+        reviewService.submitReview(500L, "First", "🙂", 4.0, "First!");
+        assertEquals(1, reviewService.getReviewsForMovie(500L).size());
+        reviewService.close();
+    }
+
+    @Test
+    public void testSubmitReviewRejectsInvalidInput() {
+        ReviewService reviewService = new ReviewService();
+        assertThrows(IllegalArgumentException.class, () -> reviewService.submitReview(1L, "", null, 4.0, "ok"));
+        assertThrows(IllegalArgumentException.class, () -> reviewService.submitReview(1L, "user", null, 6.0, "ok"));
+        assertThrows(IllegalArgumentException.class, () -> reviewService.submitReview(1L, "user", null, null, "ok"));
+        assertThrows(IllegalArgumentException.class, () -> reviewService.submitReview(1L, "user", null, 4.0, " "));
+        reviewService.close();
+    }
+
+    @Test
+    public void testSubmitReviewRejectsNonFiniteRatings() throws Exception {
+        ReviewService reviewService = withTemporaryLog();
+        assertThrows(IllegalArgumentException.class, () -> reviewService.submitReview(1L, "user", null, Double.NaN, "ok"));
+        assertThrows(IllegalArgumentException.class,
+            () -> reviewService.submitReview(1L, "user", null, Double.POSITIVE_INFINITY, "ok"));
+        assertThrows(IllegalArgumentException.class,
+            () -> reviewService.submitReview(1L, "user", null, Double.NEGATIVE_INFINITY, "ok"));
+        assertEquals(3, reviewService.getReviewsForMovie(1L).size());
+        reviewService.close();
+    }
+
+    @Test
+    public void testSubmitReviewRejectsOversizedAvatar() throws Exception {
+        ReviewService reviewService = withTemporaryLog();
+        StringBuilder avatar = new StringBuilder();
+        for (int i = 0; i <= ReviewService.MAX_AVATAR_LENGTH; i++) {
+            avatar.append('x');
+        }
+        assertThrows(IllegalArgumentException.class, () -> reviewService.submitReview(1L, "user", avatar.toString(), 4.0, "ok"));
+        // A multi-code-point emoji still fits
+        Review review = reviewService.submitReview(1L, "user", "👨‍👩‍👧‍👦", 4.0, "ok");
+        assertEquals("👨‍👩‍👧‍👦", review.getAvatarEmoji());
+        reviewService.close();
+    }
+
+    @Test
+    public void testSubmissionIsRefusedWithoutReviewLog() {
+        ReviewService reviewService = new ReviewService("", ReviewService.DEFAULT_CACHE_BYTES, "");
+        assertThrows(IllegalStateException.class, () -> reviewService.submitReview(1L, "user", null, 4.0, "Lost on restart"));
+        assertEquals(3, reviewService.getReviewsForMovie(1L).size());
+        reviewService.close();
+    }
+
+    @Test
+    public void testReviewLogDirectoryIsCreated() throws Exception {
+        java.nio.file.Path directory = java.nio.file.Files.createTempDirectory("reviews");
+        java.nio.file.Path log = directory.resolve("data").resolve("reviews.log");
+        ReviewService reviewService = new ReviewService("", ReviewService.DEFAULT_CACHE_BYTES, log.toString());
+        reviewService.submitReview(1L, "user", null, 4.0, "Kept");
+        reviewService.close();
+        assertTrue(java.nio.file.Files.size(log) > 0);
+        java.nio.file.Files.delete(log);
+        java.nio.file.Files.delete(log.getParent());
+        java.nio.file.Files.delete(directory);
+    }
+
+    @Test
+    public void testSubmittedReviewsAreReplayedAfterRestart() throws Exception {
+        java.nio.file.Path log = java.nio.file.Files.createTempFile("reviews", ".log");
+        ReviewService first = new ReviewService("", ReviewService.DEFAULT_CACHE_BYTES, log.toString());
+        Review review = first.submitReview(3L, "Survivor", "🦜", 4.5, "Still here after a restart");
+        first.close();
+
+        ReviewService second = new ReviewService("", ReviewService.DEFAULT_CACHE_BYTES, log.toString());
+        List<Review> reviews = second.getReviewsForMovie(3L);
+        Review replayed = reviews.get(reviews.size() - 1);
+        assertEquals(review.getId(), replayed.getId());
+        assertEquals(review.getCreatedAt(), replayed.getCreatedAt());
+        assertEquals("Still here after a restart", replayed.getComment());
+        second.close();
+        java.nio.file.Files.delete(log);
+    }
+
+    @Test
+    public void testTornLogRecordIsCutOffAtRestart() throws Exception {
+        java.nio.file.Path log = java.nio.file.Files.createTempFile("reviews", ".log");
+        ReviewService first = new ReviewService("", ReviewService.DEFAULT_CACHE_BYTES, log.toString());
+        first.submitReview(999L, "Before", null, 3.0, "Committed before the crash");
+        first.close();
+        java.nio.file.Files.write(log, "{\"movieId\":999,\"userName\":\"Torn".getBytes(java.nio.charset.StandardCharsets.UTF_8),
+            java.nio.file.StandardOpenOption.APPEND);
+
+        ReviewService second = new ReviewService("", ReviewService.DEFAULT_CACHE_BYTES, log.toString());
+        second.submitReview(999L, "After", null, 5.0, "Committed after the restart");
+        second.close();
+
+        ReviewService third = new ReviewService("", ReviewService.DEFAULT_CACHE_BYTES, log.toString());
+        List<Review> reviews = third.getReviewsForMovie(999L);
+        assertEquals(2, reviews.size());
+        assertEquals("Before", reviews.get(0).getUserName());
+        assertEquals("After", reviews.get(1).getUserName());
+        third.close();
+        java.nio.file.Files.delete(log);
+    }
+
+    @Test
+    public void testConcurrentSubmissionsAreAllStored() throws Exception {
+        ReviewService reviewService = withTemporaryLog();
+        java.util.concurrent.ExecutorService pool = java.util.concurrent.Executors.newFixedThreadPool(8);
+        List<java.util.concurrent.Future<Review>> futures = new java.util.ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            long movieId = 1 + (i % 4);
+            futures.add(pool.submit(() -> reviewService.submitReview(movieId, "user", null, 3.0, "concurrent")));
+        }
+        for (java.util.concurrent.Future<Review> future : futures) {
+            future.get();
+        }
+        pool.shutdown();
+        for (long movieId = 1; movieId <= 4; movieId++) {
+            long submittedCount = reviewService.getReviewsForMovie(movieId).stream()
+                .filter(review -> review.getId() != null).count();
+            assertEquals(50, submittedCount);
+        }
+        reviewService.close();
+    }
+
+    static ReviewService withTemporaryLog() throws java.io.IOException {
+        java.nio.file.Path log = java.nio.file.Files.createTempFile("reviews", ".log");
+        log.toFile().deleteOnExit();
+        return new ReviewService("", ReviewService.DEFAULT_CACHE_BYTES, log.toString());
+    }
+}
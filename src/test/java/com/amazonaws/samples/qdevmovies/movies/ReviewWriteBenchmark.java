@@ -0,0 +1,48 @@
+package com.amazonaws.samples.qdevmovies.movies;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Measures review submission throughput for 1 to N writer threads, each writer posting to
+ * its own set of movies. Not part of the test suite; run it with
+ * {@code java -cp <test classpath> com.amazonaws.samples.qdevmovies.movies.ReviewWriteBenchmark [reviewsPerThread] [maxThreads]}.
+ */
+public class ReviewWriteBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int reviewsPerThread = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : 2 * Runtime.getRuntime().availableProcessors();
+        System.out.printf("%d cores%n%8s %12s %14s%n", Runtime.getRuntime().availableProcessors(), "threads", "reviews/s", "ms total");
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            run(threads, reviewsPerThread);
+        }
+    }
+
+    private static void run(int threads, int reviewsPerThread) throws Exception {
+        ReviewService reviewService = ReviewServiceTest.withTemporaryLog();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> writers = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            long firstMovie = 1000L * (t + 1);
+            writers.add(pool.submit(() -> {
+                for (int i = 0; i < reviewsPerThread; i++) {
+                    reviewService.submitReview(firstMovie + (i % 100), "bench", null, 4.0, "benchmark review " + i);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> writer : writers) {
+            writer.get();
+        }
+        long elapsedNanos = System.nanoTime() - start;
+        pool.shutdown();
+        reviewService.close();
+        long total = (long) threads * reviewsPerThread;
+        System.out.printf("%8d %12.0f %14d%n", threads, total / (elapsedNanos / 1e9), elapsedNanos / 1_000_000);
+    }
+}
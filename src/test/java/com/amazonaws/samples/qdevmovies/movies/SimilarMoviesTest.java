@@ -0,0 +1,50 @@
+package com.amazonaws.samples.qdevmovies.movies;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SimilarMoviesTest {
+
+    @Test
+    public void testSameDirectorAndGenreRankFirst() {
+        MovieService movieService = new MovieService();
+        // The Masked Hero (Action/Crime, 2008) and Dream Heist (Action/Sci-Fi, 2010) share a director
+        List<Movie> similar = movieService.getSimilarMovies(3L, 3);
+        assertEquals(3, similar.size());
+        assertEquals(6L, similar.get(0).getId());
+        for (Movie movie : similar) {
+            assertNotEquals(3L, movie.getId());
+        }
+    }
+
+    @Test
+    public void testUnknownMovieHasNoSimilarMovies() {
+        assertTrue(new MovieService().getSimilarMovies(999L, 5).isEmpty());
+    }
+
+    @Test
+    public void testLargeCatalogBuiltInParallelMatchesSequentialBuild() {
+        List<Movie> movies = new ArrayList<>();
+        String[] genres = {"Drama", "Crime/Drama", "Action/Sci-Fi", "Comedy", "Drama/Romance"};
+        for (int i = 0; i < 5000; i++) {
+            movies.add(new Movie(i + 1, "Movie " + i, "Director " + (i % 300), 1950 + (i * 7) % 70,
+                genres[i % genres.length], "", 100, (i % 9) / 2.0));
+        }
+        CatalogScan parallelScan = new CatalogScan(4);
+        SimilarMovies parallel = SimilarMovies.build(movies, parallelScan);
+        parallelScan.shutdown();
+        SimilarMovies sequential = SimilarMovies.build(movies, new CatalogScan(1));
+
+        for (Movie movie : movies) {
+            long[] neighbours = parallel.neighboursOf(movie.getId());
+            assertEquals(SimilarMovies.NEIGHBOURS, neighbours.length);
+            assertArrayEquals(sequential.neighboursOf(movie.getId()), neighbours);
+            assertFalse(Arrays.stream(neighbours).anyMatch(id -> id == movie.getId()));
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.amazonaws.samples.qdevmovies.movies;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SingleFlightTest {
+
+    @Test
+    public void testSequentialCallsEachExecute() {
+        SingleFlight<String, Integer> flights = new SingleFlight<>();
+        assertEquals(1, (int) flights.execute("a", () -> 1));
+        assertEquals(2, (int) flights.execute("a", () -> 2));
+        assertEquals(2, flights.getStats().getExecutions());
+        assertEquals(0.0, flights.getStats().getCoalescingRatio(), 0.0);
+    }
+
+    @Test
+    public void testResetStats() {
+        SingleFlight<String, Integer> flights = new SingleFlight<>();
+        flights.execute("a", () -> 1);
+        flights.resetStats();
+        assertEquals(0, flights.getStats().getCalls());
+        flights.execute("a", () -> 2);
+        assertEquals(1, flights.getStats().getCalls());
+        assertEquals(1, flights.getStats().getExecutions());
+    }
+
+    @Test
+    public void testFollowersShareTheLeadersException() throws Exception {
+        SingleFlight<String, Integer> flights = new SingleFlight<>();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        Future<Integer> leader = pool.submit(() -> flights.execute("k", () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IllegalStateException("boom");
+        }));
+        while (flights.getStats().getInFlight() == 0) {
+            Thread.sleep(1);
+        }
+        Future<Integer> follower = pool.submit(() -> flights.execute("k", () -> 42));
+        while (flights.getStats().getCalls() < 2) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+
+        for (Future<Integer> call : Arrays.asList(leader, follower)) {
+            try {
+                call.get();
+                fail("expected the leader's exception");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+                assertEquals("boom", e.getCause().getMessage());
+            }
+        }
+        pool.shutdown();
+        assertEquals(1, flights.getStats().getExecutions());
+        assertEquals(1, flights.getStats().getCoalesced());
+        assertEquals(0, flights.getStats().getInFlight());
+    }
+}
@@ -0,0 +1,51 @@
+package com.amazonaws.samples.qdevmovies.movies;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WarmUpTest {
+
+    @Test
+    public void testWarmUpPathsCoverSearchPagesAndApis() {
+        List<String> paths = WarmUp.warmUpPaths(new MovieService().getAllMovies());
+        assertTrue(paths.contains("/movies"));
+        assertTrue(paths.contains("/movies/search?name=Prison"));
+        assertTrue(paths.contains("/movies/search?name=Pr"));
+        assertTrue(paths.contains("/movies/search?genre=Drama&director=Director"));
+        assertTrue(paths.contains("/movies/search?id=1"));
+        assertTrue(paths.contains("/movies/search?q=imprisoned&limit=10"));
+        assertTrue(paths.contains("/movies/1/details"));
+        assertTrue(paths.contains("/movies/1/reviews?sort=highest&limit=20"));
+        assertTrue(paths.contains("/movies/1/similar"));
+        assertTrue(paths.contains("/movies/search?name=Beginning"));
+    }
+
+    @Test
+    public void testDisabledWarmUpIsSkipped() {
+        WarmUp warmUp = new WarmUp(new MovieService(), new ReviewService(), null, null, false, 1000, 100);
+        warmUp.run(null);
+        WarmUp.Stats stats = warmUp.getStats();
+        assertEquals("skipped", stats.getState());
+        assertFalse(warmUp.isRunning());
+        assertEquals(0, stats.getRequests());
+        assertEquals(0, stats.getFirstRequests());
+    }
+
+    @Test
+    public void testOnlyFirstRequestsAreRecorded() {
+        WarmUp warmUp = new WarmUp(new MovieService(), new ReviewService(), null, null, false, 1000, 100);
+        warmUp.recordRequest(50_000_000L);
+        for (int i = 1; i < WarmUp.FIRST_REQUESTS + 20; i++) {
+            warmUp.recordRequest(i * 1_000_000L);
+        }
+        WarmUp.Stats stats = warmUp.getStats();
+        assertEquals(WarmUp.FIRST_REQUESTS, stats.getFirstRequests());
+        assertEquals(50.0, stats.getFirstRequestMillis(), 1e-9);
+        assertEquals(99.0, stats.getFirstRequestsMaxMillis(), 1e-9);
+        assertEquals(50.0, stats.getFirstRequestsP50Millis(), 1e-9);
+        assertEquals(98.0, stats.getFirstRequestsP99Millis(), 1e-9);
+    }
+}